@@ -0,0 +1,182 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.LocalBroadcastManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Process wide catalogue of the launchable applications, sorted by label and one per package.
+ * <p>
+ * The catalogue is loaded once in background, then kept current by the package events:
+ * only the changed package is queried again. Listeners are called on the main thread
+ * each time a new list is published.
+ */
+public class AppCatalogue {
+	private static AppCatalogue sInstance;
+
+	private final Context mContext;
+	private final Executor mExecutor = Executors.newSingleThreadExecutor();
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+	private volatile List<AppInfo> mApplications;
+	private boolean mLoading = false;
+
+	public interface Listener {
+		void onCatalogueChanged(List<AppInfo> applications);
+	}
+
+	private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			Uri data = intent.getData();
+			if (data == null)
+				return;
+
+			final String packageName = data.getSchemeSpecificPart();
+			final boolean removed = Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())
+					&& !intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+			mExecutor.execute(() -> updatePackage(packageName, removed));
+		}
+	};
+
+	private final BroadcastReceiver mLabelsReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			// handles keep their label, build new ones sorted by the new labels
+			mExecutor.execute(() -> {
+				if (mApplications != null)
+					publish(Utils.loadApplications(mContext));
+			});
+		}
+	};
+
+	private AppCatalogue(Context context) {
+		mContext = context;
+
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+		filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+		filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+		filter.addDataScheme("package");
+		context.registerReceiver(mPackageReceiver, filter);
+		LocalBroadcastManager.getInstance(context).registerReceiver(mLabelsReceiver,
+				new IntentFilter(LabelCache.ACTION_LABELS_CHANGED));
+	}
+
+	public static synchronized AppCatalogue getInstance(Context context) {
+		if (sInstance == null)
+			sInstance = new AppCatalogue(context.getApplicationContext());
+		return (sInstance);
+	}
+
+	/**
+	 * @return the sorted applications, null while the catalogue is not loaded
+	 */
+	public List<AppInfo> getApplications() {
+		return (mApplications);
+	}
+
+	/**
+	 * Load the catalogue in background if it is not loaded yet, then warm up the icons,
+	 * only the first ones on low devices.
+	 */
+	public synchronized void load() {
+		if (mApplications != null || mLoading)
+			return;
+
+		mLoading = true;
+		mExecutor.execute(() -> {
+			List<AppInfo> applications = Utils.loadApplications(mContext);
+			publish(applications);
+
+			DeviceProfile profile = DeviceProfile.getInstance(mContext);
+			if (profile.warmAllIcons())
+				IconCache.getInstance(mContext).loadIcons(applications);
+			else
+				IconCache.getInstance(mContext).loadIcons(applications.subList(0, Math.min(applications.size(), profile.getPrefetchDepth())));
+		});
+	}
+
+	/**
+	 * Release the icons held by the catalogue handles, the picker loads them again when it is shown.
+	 */
+	public void trimMemory() {
+		List<AppInfo> applications = mApplications;
+		if (applications == null)
+			return;
+
+		for (AppInfo appInfo : applications) {
+			appInfo.releaseIcon();
+		}
+	}
+
+	public void addListener(Listener listener) {
+		mListeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		mListeners.remove(listener);
+	}
+
+	private void updatePackage(String packageName, boolean removed) {
+		List<AppInfo> current = mApplications;
+		if (current == null)
+			return;
+
+		List<AppInfo> applications = new ArrayList<>(current);
+		Iterator<AppInfo> iterator = applications.iterator();
+		while (iterator.hasNext()) {
+			if (packageName.equals(iterator.next().getPackageName()))
+				iterator.remove();
+		}
+		if (!removed)
+			applications.addAll(Utils.queryApplications(mContext, packageName));
+
+		Utils.sortApplications(applications);
+		publish(applications);
+	}
+
+	private void publish(List<AppInfo> applications) {
+		final List<AppInfo> published = Collections.unmodifiableList(applications);
+
+		mApplications = published;
+		synchronized (this) {
+			mLoading = false;
+		}
+		mHandler.post(() -> {
+			for (Listener listener : mListeners) {
+				listener.onCatalogueChanged(published);
+			}
+		});
+	}
+}
@@ -17,78 +17,144 @@
 
 package com.alexpozzani.tvlauncher;
 
-import android.content.pm.ApplicationInfo;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
-import android.util.DisplayMetrics;
-import android.util.Log;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
+/**
+ * Lightweight handle on a launchable application.
+ * <p>
+ * Only the package name is known up front. The label and the icon are fetched on first access
+ * from {@link LabelCache} and {@link IconCache}, synchronously or with the async accessors.
+ * A handle built from a component only queries the package manager when a cache misses.
+ */
 public class AppInfo {
-	private final Drawable mIcon;
-	private String mName;
+	private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+	private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+	private final Context mContext;
+	private final PackageManager mPackageManager;
+	private final ComponentName mComponent;
+	private final long mVersionCode;
 	private final String mPackageName;
+	private volatile ResolveInfo mResolveInfo;
+	private volatile String mName;
+	private volatile Drawable mIcon;
+
+	public interface Callback<T> {
+		void onLoaded(AppInfo appInfo, T value);
+	}
 
-	public AppInfo(PackageManager packageManager, ResolveInfo resolveInfo) {
+	public AppInfo(Context context, PackageManager packageManager, ResolveInfo resolveInfo, long versionCode) {
+		mContext = context.getApplicationContext();
+		mPackageManager = packageManager;
+		mResolveInfo = resolveInfo;
+		mComponent = new ComponentName(resolveInfo.activityInfo.packageName, resolveInfo.activityInfo.name);
+		mVersionCode = versionCode;
 		mPackageName = resolveInfo.activityInfo.packageName;
+	}
 
-		//mIcon = resolveInfo.loadIcon(packageManager);
-		mIcon = getApplicationIcon(packageManager, resolveInfo);
-		try {
-			mName = resolveInfo.loadLabel(packageManager).toString();
-		} catch (Exception e) {
-			mName = mPackageName;
-		}
+	public AppInfo(Context context, PackageManager packageManager, ComponentName component, long versionCode) {
+		mContext = context.getApplicationContext();
+		mPackageManager = packageManager;
+		mComponent = component;
+		mVersionCode = versionCode;
+		mPackageName = component.getPackageName();
+	}
+
+	private ResolveInfo getResolveInfo() {
+		if (mResolveInfo == null)
+			mResolveInfo = mPackageManager.resolveActivity(new Intent(Intent.ACTION_MAIN).setComponent(mComponent), 0);
+		return mResolveInfo;
 	}
 
 	@NonNull
 	public String getName() {
+		if (mName == null)
+			mName = LabelCache.getInstance(mContext).peekLabel(mPackageName, mComponent.getClassName(), mVersionCode);
+		if (mName == null && getResolveInfo() != null)
+			mName = LabelCache.getInstance(mContext).getLabel(mPackageManager, getResolveInfo(), mVersionCode);
 		if (mName != null)
 			return mName;
 		return ("");
 	}
 
 	public Drawable getIcon() {
+		if (mIcon == null)
+			mIcon = IconCache.getInstance(mContext).getCachedIcon(mPackageName, mVersionCode);
+		if (mIcon == null && getResolveInfo() != null)
+			mIcon = IconCache.getInstance(mContext).getIcon(mPackageManager, getResolveInfo(), mVersionCode);
 		return mIcon;
 	}
 
-	public String getPackageName() {
-		return mPackageName;
+	/**
+	 * @return the icon if it is already loaded or in memory, null otherwise
+	 */
+	public Drawable peekIcon() {
+		if (mIcon == null)
+			mIcon = IconCache.getInstance(mContext).peekIcon(mPackageName, mVersionCode);
+		return mIcon;
 	}
 
-	private Drawable getApplicationIcon(PackageManager packageManager, ResolveInfo resolveInfo) {
-		Drawable appIcon = null;
-
-		/*
-		try {
-			//https://developer.android.com/reference/android/content/pm/PackageManager#getApplicationBanner(java.lang.String)
-
-			resolveInfo.activityInfo.loadBanner(packageManager);
-			Drawable banner = resolveInfo.activityInfo.loadBanner(packageManager);
-			if (banner == null) {
-				banner = resolveInfo.activityInfo.applicationInfo.loadBanner(packageManager);
-			}
+	/**
+	 * Drop the reference on the icon, it is loaded again from the icon cache on next access.
+	 */
+	public void releaseIcon() {
+		mIcon = null;
+	}
 
-			appIcon = banner;
-		} catch (Exception e) {
-			Log.e("check", "error getting Banner :", e);
+	/**
+	 * Load the label in background, the callback is run on the main thread,
+	 * immediately if the label is already loaded.
+	 */
+	public void getNameAsync(final Callback<String> callback) {
+		if (mName != null) {
+			callback.onLoaded(this, mName);
+			return;
 		}
-		*/
-
-		if (appIcon == null) {
-			try {
-				ApplicationInfo applicationInfo = resolveInfo.activityInfo.applicationInfo;
-				Resources resourcesForApplication = packageManager.getResourcesForApplication(applicationInfo);
-				appIcon = resourcesForApplication.getDrawableForDensity(applicationInfo.icon, DisplayMetrics.DENSITY_XXXHIGH, null);
-			} catch (Exception e) {
-				Log.e("check", "error getting Hi Res Icon :", e);
-				appIcon = resolveInfo.activityInfo.applicationInfo.loadIcon(packageManager);
-			}
+		sExecutor.execute(() -> {
+			final String name = getName();
+			sHandler.post(() -> callback.onLoaded(this, name));
+		});
+	}
+
+	/**
+	 * Load the icon in background, the callback is run on the main thread,
+	 * immediately if the icon is already in memory.
+	 */
+	public void getIconAsync(final Callback<Drawable> callback) {
+		if (peekIcon() != null) {
+			callback.onLoaded(this, mIcon);
+			return;
 		}
+		sExecutor.execute(() -> {
+			final Drawable icon = getIcon();
+			sHandler.post(() -> callback.onLoaded(this, icon));
+		});
+	}
+
+	public String getPackageName() {
+		return mPackageName;
+	}
+
+	public String getActivityName() {
+		return mComponent.getClassName();
+	}
+
+	public ComponentName getComponent() {
+		return mComponent;
+	}
 
-		return appIcon;
+	public long getVersionCode() {
+		return mVersionCode;
 	}
 }
@@ -0,0 +1,247 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.content.LocalBroadcastManager;
+import android.util.Log;
+
+import com.alexpozzani.tvlauncher.views.FolderPreview;
+import com.alexpozzani.tvlauncher.views.GridSnapshot;
+
+import java.io.PrintWriter;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Maintenance of the caches while the device is not used.
+ * <p>
+ * A run checks the icon and label caches against the installed package versions, renders the
+ * missing icons and folder previews of the grid, deletes the stale icon, preview and snapshot
+ * files and removes the packages no longer installed from the slots. Runs are started by
+ * {@link MaintenanceJobService} when the device is idle and charging, or from an idle handler
+ * of the main looper when the job scheduler is not available, at most once per {@link #MIN_INTERVAL_MS}.
+ */
+public class CacheMaintenance {
+	private static final String TAG = "CacheMaintenance";
+	private static final String PREFERENCES_NAME = "maintenance";
+	private static final String KEY_LAST_RUN = "last_run";
+	private static final String KEY_LAST_REPORT = "last_report";
+	private static final int JOB_ID = 0x4D41;
+	public static final long MIN_INTERVAL_MS = 12 * 60 * 60 * 1000;
+
+	private static CacheMaintenance sInstance;
+
+	private final Context mContext;
+	private final SharedPreferences mPreferences;
+	private final Executor mExecutor = Executors.newSingleThreadExecutor();
+	private boolean mRunning = false;
+	private volatile boolean mCancelled = false;
+	private boolean mIdleHandlerAdded = false;
+
+	/**
+	 * Work done by a run.
+	 */
+	public static class Report {
+		int mIconsRemoved;
+		int mLabelsRemoved;
+		int mPreviewsRemoved;
+		boolean mSnapshotRemoved;
+		int mIconsRendered;
+		int mPreviewsRendered;
+		int mSlotsCleared;
+		boolean mCancelled;
+		long mDuration;
+
+		@Override
+		public String toString() {
+			return (mIconsRemoved + " icons, " + mLabelsRemoved + " labels, " + mPreviewsRemoved + " previews"
+					+ (mSnapshotRemoved ? " and the snapshot" : "") + " removed, "
+					+ mIconsRendered + " icons and " + mPreviewsRendered + " previews rendered, "
+					+ mSlotsCleared + " slots cleared in " + mDuration + "ms" + (mCancelled ? " (cancelled)" : ""));
+		}
+	}
+
+	private CacheMaintenance(Context context) {
+		mContext = context;
+		mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+	}
+
+	public static synchronized CacheMaintenance getInstance(Context context) {
+		if (sInstance == null)
+			sInstance = new CacheMaintenance(context.getApplicationContext());
+		return (sInstance);
+	}
+
+	/**
+	 * Schedule the maintenance job if it is not pending, or run once from an idle
+	 * handler of the main looper when the job can not be scheduled.
+	 * Must be called on the main thread.
+	 */
+	public void schedule() {
+		JobScheduler scheduler = (JobScheduler) mContext.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+
+		if (scheduler != null) {
+			if (scheduler.getPendingJob(JOB_ID) != null)
+				return;
+
+			JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(mContext, MaintenanceJobService.class))
+					.setRequiresDeviceIdle(true)
+					.setRequiresCharging(true)
+					.setPeriodic(MIN_INTERVAL_MS)
+					.build();
+			if (scheduler.schedule(job) == JobScheduler.RESULT_SUCCESS)
+				return;
+		}
+
+		if (mIdleHandlerAdded)
+			return;
+		mIdleHandlerAdded = true;
+		Looper.myQueue().addIdleHandler(() -> {
+			mIdleHandlerAdded = false;
+			runAsync(null);
+			return (false);
+		});
+	}
+
+	/**
+	 * Start a run in background unless one is running or the last one is too recent.
+	 *
+	 * @param done run on the maintenance thread once the run ended or was skipped, may be null
+	 */
+	public void runAsync(final Runnable done) {
+		// cleared when queued : a cancel received before the run starts still stops it
+		mCancelled = false;
+		mExecutor.execute(() -> {
+			run();
+			if (done != null)
+				done.run();
+		});
+	}
+
+	/**
+	 * Stop the running maintenance between two steps.
+	 */
+	public void cancel() {
+		mCancelled = true;
+	}
+
+	/**
+	 * Run the maintenance on the calling thread, rate limited. The cancelled state is
+	 * the one left by {@link #runAsync(Runnable)} or {@link #cancel()}.
+	 *
+	 * @return the report, null if the run was skipped
+	 */
+	public Report run() {
+		synchronized (this) {
+			long lastRun = mPreferences.getLong(KEY_LAST_RUN, 0);
+			if (mRunning || (lastRun != 0 && System.currentTimeMillis() - lastRun < MIN_INTERVAL_MS))
+				return (null);
+			mRunning = true;
+		}
+
+		Report report = new Report();
+		long start = SystemClock.elapsedRealtime();
+		try {
+			maintain(report);
+		} finally {
+			synchronized (this) {
+				mRunning = false;
+			}
+		}
+		report.mCancelled = mCancelled;
+		report.mDuration = SystemClock.elapsedRealtime() - start;
+		Log.i(TAG, "run: " + report);
+
+		// a cancelled run is done again on the next job
+		mPreferences.edit()
+				.putLong(KEY_LAST_RUN, report.mCancelled ? 0 : System.currentTimeMillis())
+				.putString(KEY_LAST_REPORT, report.toString())
+				.apply();
+		return (report);
+	}
+
+	private void maintain(Report report) {
+		Map<String, Long> versionCodes = Utils.getVersionCodes(mContext.getPackageManager());
+		// an empty package list is a package manager failure, nothing would be left
+		if (versionCodes.isEmpty())
+			return;
+
+		report.mIconsRemoved = IconCache.getInstance(mContext).removeStaleIcons(versionCodes);
+		report.mLabelsRemoved = LabelCache.getInstance(mContext).removeStaleLabels(versionCodes);
+		if (mCancelled)
+			return;
+
+		GridModel model = GridModel.getInstance(mContext);
+		Setup setup = new Setup(mContext);
+		int gridX = setup.getGridColumns();
+		int gridY = setup.getGridRows();
+		int slotCount = gridX * gridY;
+		List<Folder> folders = new ArrayList<>();
+
+		// packages no longer installed are removed from the slots and folders
+		int[] cleared = model.removeUninstalled(slotCount, versionCodes.keySet());
+		report.mSlotsCleared = cleared.length;
+		if (cleared.length > 0)
+			LocalBroadcastManager.getInstance(mContext).sendBroadcast(
+					new Intent(LayoutProvider.ACTION_SLOTS_CHANGED).putExtra(LayoutProvider.EXTRA_POSITIONS, cleared));
+
+		for (int i = 0; i < slotCount; i++) {
+			Folder folder = model.getSlot(i).getFolder();
+			if (folder != null)
+				folders.add(folder);
+		}
+		report.mPreviewsRemoved = FolderPreview.removeStalePreviews(mContext, folders);
+		report.mSnapshotRemoved = GridSnapshot.removeIfStale(mContext, GridSnapshot.getState(mContext, gridX, gridY));
+
+		// render what the next cold start of the grid would render
+		for (int i = 0; i < slotCount && !mCancelled; i++) {
+			GridModel.Slot slot = model.getSlot(i);
+			AppInfo appInfo = slot.getAppInfo();
+
+			if (appInfo != null) {
+				appInfo.getName();
+				if (!IconCache.getInstance(mContext).hasIcon(appInfo.getPackageName(), appInfo.getVersionCode())
+						&& appInfo.getIcon() != null)
+					report.mIconsRendered++;
+			} else if (slot.getFolder() != null && FolderPreview.prerender(mContext, slot.getFolder())) {
+				report.mPreviewsRendered++;
+			}
+		}
+	}
+
+	public void dump(String prefix, PrintWriter writer) {
+		long lastRun = mPreferences.getLong(KEY_LAST_RUN, 0);
+
+		writer.print(prefix);
+		writer.println("Cache maintenance: last run " + (lastRun != 0 ? DateFormat.getDateTimeInstance().format(new Date(lastRun)) : "never")
+				+ ", " + mPreferences.getString(KEY_LAST_REPORT, "no report"));
+	}
+}
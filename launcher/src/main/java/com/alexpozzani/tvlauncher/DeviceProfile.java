@@ -0,0 +1,171 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.PrintWriter;
+
+/**
+ * Quality tier of the device, picked from the memory of the device unless it is forced in the settings.
+ * <p>
+ * The tier sets the icon resolution and bitmap config, the memory cache budgets and the prefetch
+ * depth of the application list.
+ */
+public class DeviceProfile {
+	private static final String TAG = "DeviceProfile";
+
+	public static final String TIER_AUTO = "auto";
+	public static final String TIER_LOW = "low";
+	public static final String TIER_NORMAL = "normal";
+	public static final String TIER_HIGH = "high";
+
+	private static final int LOW_MEMORY_CLASS = 96;
+	private static final int HIGH_MEMORY_CLASS = 256;
+
+	private static volatile DeviceProfile sInstance;
+
+	private final String mTier;
+	private final String mOverride;
+	private final boolean mLowRamDevice;
+	private final int mMemoryClass;
+	private final int mIconSize;
+
+	private DeviceProfile(Context context, String override) {
+		ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+
+		mOverride = override;
+		mLowRamDevice = am != null && am.isLowRamDevice();
+		mMemoryClass = am != null ? am.getMemoryClass() : LOW_MEMORY_CLASS;
+
+		if (!TIER_AUTO.equals(override))
+			mTier = override;
+		else if (mLowRamDevice || mMemoryClass <= LOW_MEMORY_CLASS)
+			mTier = TIER_LOW;
+		else if (mMemoryClass >= HIGH_MEMORY_CLASS)
+			mTier = TIER_HIGH;
+		else
+			mTier = TIER_NORMAL;
+		// icons are rendered at the largest size they are shown, the home tile or the picker grid
+		Resources resources = context.getResources();
+		int iconSize = Math.max(resources.getDimensionPixelSize(R.dimen.application_drawable_size),
+				resources.getDimensionPixelSize(R.dimen.grid_item_drawable_size));
+		mIconSize = TIER_LOW.equals(mTier) ? iconSize * 3 / 4 : iconSize;
+		Log.i(TAG, "tier " + mTier + " (low ram " + mLowRamDevice + ", memory class " + mMemoryClass + ")");
+	}
+
+	/**
+	 * @return the profile of the device, picked once per process : icon loads call this
+	 * from many threads, the setting is not read again here
+	 */
+	public static DeviceProfile getInstance(Context context) {
+		if (sInstance == null) {
+			synchronized (DeviceProfile.class) {
+				if (sInstance == null)
+					sInstance = new DeviceProfile(context.getApplicationContext(), new Setup(context).getDeviceTier());
+			}
+		}
+		return (sInstance);
+	}
+
+	/**
+	 * Pick the tier again after the tier setting changed.
+	 *
+	 * @return true if the profile changed
+	 */
+	public static synchronized boolean reload(Context context) {
+		String override = new Setup(context).getDeviceTier();
+		if (sInstance != null && sInstance.mOverride.equals(override))
+			return (false);
+		sInstance = new DeviceProfile(context.getApplicationContext(), override);
+		return (true);
+	}
+
+	public String getTier() {
+		return mTier;
+	}
+
+	public boolean isLow() {
+		return TIER_LOW.equals(mTier);
+	}
+
+	public boolean isHigh() {
+		return TIER_HIGH.equals(mTier);
+	}
+
+	/**
+	 * @return size in pixels of the rendered application icons, reduced on low devices
+	 */
+	public int getIconSize() {
+		return mIconSize;
+	}
+
+	/**
+	 * @return bitmap config of a rendered icon, 16 bits only for opaque icons on low devices
+	 */
+	public Bitmap.Config getIconConfig(boolean opaque) {
+		if (isLow() && opaque)
+			return (Bitmap.Config.RGB_565);
+		return (Bitmap.Config.ARGB_8888);
+	}
+
+	public int getIconCacheSize() {
+		long maxMemory = Runtime.getRuntime().maxMemory();
+		if (isLow())
+			return ((int) (maxMemory / 16));
+		if (isHigh())
+			return ((int) (maxMemory / 6));
+		return ((int) (maxMemory / 8));
+	}
+
+	public int getPreviewCacheSize() {
+		if (isLow())
+			return (1024 * 1024);
+		if (isHigh())
+			return (8 * 1024 * 1024);
+		return (4 * 1024 * 1024);
+	}
+
+	/**
+	 * @return number of application list items whose icon and label are loaded ahead
+	 */
+	public int getPrefetchDepth() {
+		if (isLow())
+			return (6);
+		if (isHigh())
+			return (48);
+		return (24);
+	}
+
+	/**
+	 * @return true if all the catalogue icons are loaded in background once the home screen is shown
+	 */
+	public boolean warmAllIcons() {
+		return (!isLow());
+	}
+
+	public void dump(String prefix, PrintWriter writer) {
+		writer.print(prefix);
+		writer.println("Device tier: " + mTier + " (setting " + mOverride + ", low ram " + mLowRamDevice
+				+ ", memory class " + mMemoryClass + "MB), icons " + mIconSize + "px");
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.os.Handler;
+import android.view.KeyEvent;
+
+/**
+ * Slot selection from the remote keys, without moving the focus.
+ * <p>
+ * Digits form the slot number, 1 for the first slot : the number is taken after {@link #DIGIT_TIMEOUT_MS}
+ * without a new digit, or at once when one more digit could not make a valid slot number.
+ * Each configured shortcut key code selects a slot directly, the first code the first slot.
+ */
+public class DirectLaunch {
+	public static final long DIGIT_TIMEOUT_MS = 1200;
+
+	private final Handler mHandler = new Handler();
+	private final Listener mListener;
+	private int[] mShortcutKeys = new int[0];
+	private int mSlotCount = 0;
+	private int mNumber = 0;
+
+	public interface Listener {
+		void onSlotSelected(int position);
+	}
+
+	private final Runnable mCommit = new Runnable() {
+		@Override
+		public void run() {
+			commit();
+		}
+	};
+
+	public DirectLaunch(Listener listener) {
+		mListener = listener;
+	}
+
+	public void setShortcutKeys(int[] keyCodes) {
+		mShortcutKeys = keyCodes;
+	}
+
+	public void setSlotCount(int count) {
+		mSlotCount = count;
+	}
+
+	/**
+	 * @return true if the key selects a slot or is part of a slot number
+	 */
+	public boolean onKeyDown(KeyEvent event) {
+		int keyCode = event.getKeyCode();
+
+		for (int i = 0; i < mShortcutKeys.length; i++) {
+			if (mShortcutKeys[i] == keyCode) {
+				if (event.getRepeatCount() == 0) {
+					cancel();
+					select(i + 1);
+				}
+				return (true);
+			}
+		}
+
+		int digit = getDigit(keyCode);
+		if (digit < 0)
+			return (false);
+		if (event.getRepeatCount() > 0)
+			return (true);
+
+		mNumber = mNumber * 10 + digit;
+		mHandler.removeCallbacks(mCommit);
+		if (mNumber * 10 > mSlotCount)
+			commit();
+		else
+			mHandler.postDelayed(mCommit, DIGIT_TIMEOUT_MS);
+		return (true);
+	}
+
+	public void cancel() {
+		mHandler.removeCallbacks(mCommit);
+		mNumber = 0;
+	}
+
+	private void commit() {
+		int number = mNumber;
+
+		cancel();
+		select(number);
+	}
+
+	private void select(int number) {
+		if (number >= 1 && number <= mSlotCount)
+			mListener.onSlotSelected(number - 1);
+	}
+
+	private static int getDigit(int keyCode) {
+		if (keyCode >= KeyEvent.KEYCODE_0 && keyCode <= KeyEvent.KEYCODE_9)
+			return (keyCode - KeyEvent.KEYCODE_0);
+		if (keyCode >= KeyEvent.KEYCODE_NUMPAD_0 && keyCode <= KeyEvent.KEYCODE_NUMPAD_9)
+			return (keyCode - KeyEvent.KEYCODE_NUMPAD_0);
+		return (-1);
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A home slot holding several packages.
+ * Stored in the layout preferences as "folder:package1;package2;..." in place of a single package name.
+ */
+public class Folder {
+	private static final String PREFIX = "folder:";
+	private static final String SEPARATOR = ";";
+
+	private final List<String> mPackages = new ArrayList<>();
+
+	public Folder() {
+	}
+
+	public Folder(List<String> packages) {
+		for (String packageName : packages) {
+			add(packageName);
+		}
+	}
+
+	public static boolean isFolder(String value) {
+		return (value != null && value.startsWith(PREFIX));
+	}
+
+	/**
+	 * Build a folder from a slot preference value.
+	 * A plain package name gives a folder holding this single package.
+	 */
+	public static Folder fromPreference(String value) {
+		Folder folder = new Folder();
+
+		if (TextUtils.isEmpty(value))
+			return (folder);
+
+		if (isFolder(value)) {
+			for (String packageName : value.substring(PREFIX.length()).split(SEPARATOR)) {
+				folder.add(packageName);
+			}
+		} else {
+			folder.add(value);
+		}
+		return (folder);
+	}
+
+	/**
+	 * Slot preference value for this folder.
+	 * A folder reduced to one package is stored as this package, an empty one as null.
+	 */
+	public String toPreference() {
+		if (mPackages.isEmpty())
+			return (null);
+		if (mPackages.size() == 1)
+			return (mPackages.get(0));
+		return (PREFIX + TextUtils.join(SEPARATOR, mPackages));
+	}
+
+	public boolean add(String packageName) {
+		if (TextUtils.isEmpty(packageName) || mPackages.contains(packageName))
+			return (false);
+		return (mPackages.add(packageName));
+	}
+
+	public boolean remove(String packageName) {
+		return (mPackages.remove(packageName));
+	}
+
+	public List<String> getPackages() {
+		return (Collections.unmodifiableList(mPackages));
+	}
+
+	public int size() {
+		return (mPackages.size());
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return (o instanceof Folder && mPackages.equals(((Folder) o).mPackages));
+	}
+
+	@Override
+	public int hashCode() {
+		return (mPackages.hashCode());
+	}
+}
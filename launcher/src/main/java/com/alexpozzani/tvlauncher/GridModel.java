@@ -0,0 +1,349 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.net.Uri;
+import android.support.v4.content.LocalBroadcastManager;
+import android.support.v4.content.pm.PackageInfoCompat;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.alexpozzani.tvlauncher.fragments.ApplicationFragment;
+import com.alexpozzani.tvlauncher.views.ApplicationView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Process wide model of the home grid slots, independent from the views.
+ * <p>
+ * A slot is read from the preferences and resolved (application handle and launch intent)
+ * once, then kept until it is written again or invalidated, so views created again after a
+ * configuration change or a fragment re-creation bind without package manager or preference
+ * reads. Slot writes of the home screen go through the model; other writers (layout import,
+ * provisioning provider) invalidate the slots they changed.
+ * Applications are resolved from the {@link PackageIndex} snapshot when it knows the package.
+ * Other packages are resolved from the package manager in background : the slot is returned
+ * unresolved meanwhile, then {@link LayoutProvider#ACTION_SLOTS_CHANGED} is sent for it.
+ */
+public class GridModel {
+	private static final String TAG = "GridModel";
+
+	private static GridModel sInstance;
+
+	private final Context mContext;
+	private final SharedPreferences mPreferences;
+	private final SparseArray<Slot> mSlots = new SparseArray<>();
+	private final Executor mExecutor = Executors.newSingleThreadExecutor();
+
+	/**
+	 * Resolved content of a slot : empty, a folder or an application.
+	 */
+	public static class Slot {
+		private final String mValue;
+		private final Folder mFolder;
+		private final AppInfo mAppInfo;
+		private final Intent mLaunchIntent;
+
+		Slot(String value, Folder folder, AppInfo appInfo, Intent launchIntent) {
+			mValue = value;
+			mFolder = folder;
+			mAppInfo = appInfo;
+			mLaunchIntent = launchIntent;
+		}
+
+		public String getValue() {
+			return mValue;
+		}
+
+		public Folder getFolder() {
+			return mFolder;
+		}
+
+		public AppInfo getAppInfo() {
+			return mAppInfo;
+		}
+
+		public Intent getLaunchIntent() {
+			return mLaunchIntent;
+		}
+
+		public boolean isEmpty() {
+			return (mFolder == null && mAppInfo == null);
+		}
+	}
+
+	private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			Uri data = intent.getData();
+			if (data == null)
+				return;
+
+			int[] positions = invalidatePackage(data.getSchemeSpecificPart());
+			if (positions.length > 0)
+				notifySlotsChanged(positions);
+		}
+	};
+
+	private GridModel(Context context) {
+		mContext = context;
+		mPreferences = context.getSharedPreferences(ApplicationFragment.PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+		filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+		filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+		filter.addDataScheme("package");
+		context.registerReceiver(mPackageReceiver, filter);
+	}
+
+	public static synchronized GridModel getInstance(Context context) {
+		if (sInstance == null)
+			sInstance = new GridModel(context.getApplicationContext());
+		return (sInstance);
+	}
+
+	/**
+	 * @return the resolved slot, read and resolved on first access only. A package the index does
+	 * not know is resolved in background, the slot has no application until then.
+	 */
+	public synchronized Slot getSlot(int position) {
+		Slot slot = mSlots.get(position);
+		if (slot == null)
+			slot = put(position, mPreferences.getString(ApplicationView.getPreferenceKey(position), null));
+		return (slot);
+	}
+
+	public String getValue(int position) {
+		return (getSlot(position).getValue());
+	}
+
+	/**
+	 * Write a slot value, null or empty clears the slot.
+	 */
+	public synchronized void setSlot(int position, String value) {
+		String key = ApplicationView.getPreferenceKey(position);
+		SharedPreferences.Editor editor = mPreferences.edit();
+
+		if (TextUtils.isEmpty(value))
+			editor.remove(key);
+		else
+			editor.putString(key, value);
+		editor.apply();
+
+		put(position, value);
+	}
+
+	/**
+	 * Keep the slot resolved without the package manager, or queue its resolution.
+	 */
+	private Slot put(final int position, final String value) {
+		final Slot slot = resolveFromIndex(value);
+		mSlots.put(position, slot);
+		if (slot.mValue == null || slot.mFolder != null || slot.mAppInfo != null)
+			return (slot);
+
+		mExecutor.execute(() -> {
+			Slot resolved = resolve(value);
+			synchronized (this) {
+				// the slot was written or invalidated meanwhile
+				if (mSlots.get(position) != slot)
+					return;
+				mSlots.put(position, resolved);
+			}
+			if (resolved.mAppInfo != null)
+				notifySlotsChanged(new int[]{position});
+		});
+		return (slot);
+	}
+
+	public synchronized void invalidate() {
+		mSlots.clear();
+	}
+
+	public synchronized void invalidate(int[] positions) {
+		for (int position : positions) {
+			mSlots.remove(position);
+		}
+	}
+
+	/**
+	 * @return the positions of the loaded slots which used the package
+	 */
+	private synchronized int[] invalidatePackage(String packageName) {
+		PackageIndex.getInstance(mContext).remove(packageName);
+		return (invalidatePackages(Collections.singleton(packageName)));
+	}
+
+	/**
+	 * @return the positions of the loaded slots which used one of the packages
+	 */
+	private synchronized int[] invalidatePackages(Set<String> packages) {
+		List<Integer> positions = new ArrayList<>();
+
+		for (int i = mSlots.size() - 1; i >= 0; i--) {
+			Slot slot = mSlots.valueAt(i);
+			if (slot.mValue == null)
+				continue;
+
+			boolean used = packages.contains(slot.mValue);
+			if (slot.mFolder != null) {
+				for (String packageName : slot.mFolder.getPackages()) {
+					used |= packages.contains(packageName);
+				}
+			}
+			if (used) {
+				positions.add(mSlots.keyAt(i));
+				mSlots.removeAt(i);
+			}
+		}
+
+		return (toArray(positions));
+	}
+
+	/**
+	 * Remove the packages which are not installed from the slots and folders, in one locked pass.
+	 * A slot is only rewritten if its stored value is still the value the model read : a slot
+	 * written meanwhile outside of the model (layout import, provider) is left to that writer.
+	 *
+	 * @param installed packages installed on the device
+	 * @return the positions of the rewritten slots
+	 */
+	public synchronized int[] removeUninstalled(int slotCount, Set<String> installed) {
+		List<Integer> positions = new ArrayList<>();
+
+		for (int position = 0; position < slotCount; position++) {
+			String value = getValue(position);
+			if (TextUtils.isEmpty(value))
+				continue;
+
+			Folder folder = Folder.fromPreference(value);
+			for (String packageName : folder.getPackages().toArray(new String[0])) {
+				if (!installed.contains(packageName))
+					folder.remove(packageName);
+			}
+			String cleaned = folder.toPreference();
+			if (TextUtils.equals(cleaned, value)
+					|| !TextUtils.equals(value, mPreferences.getString(ApplicationView.getPreferenceKey(position), null)))
+				continue;
+
+			setSlot(position, cleaned);
+			positions.add(position);
+		}
+		return (toArray(positions));
+	}
+
+	private static int[] toArray(List<Integer> positions) {
+		int[] result = new int[positions.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = positions.get(i);
+		}
+		return (result);
+	}
+
+	/**
+	 * Check the package index in background, once per process, and rebind the slots
+	 * of the packages which changed since it was written.
+	 */
+	public void verifyIndex() {
+		mExecutor.execute(() -> {
+			Set<String> changed = PackageIndex.getInstance(mContext).verify();
+			if (changed.isEmpty())
+				return;
+
+			int[] positions = invalidatePackages(changed);
+			if (positions.length > 0)
+				notifySlotsChanged(positions);
+		});
+	}
+
+	private void notifySlotsChanged(int[] positions) {
+		LocalBroadcastManager.getInstance(mContext).sendBroadcast(
+				new Intent(LayoutProvider.ACTION_SLOTS_CHANGED).putExtra(LayoutProvider.EXTRA_POSITIONS, positions));
+	}
+
+	/**
+	 * @return the slot resolved without the package manager, an application slot without
+	 * application if the index does not know the package
+	 */
+	private Slot resolveFromIndex(String value) {
+		if (TextUtils.isEmpty(value))
+			return (new Slot(null, null, null, null));
+
+		if (Folder.isFolder(value))
+			return (new Slot(value, Folder.fromPreference(value), null, null));
+
+		// bound from the index snapshot without querying the package manager
+		PackageIndex.Entry entry = PackageIndex.getInstance(mContext).get(value);
+		if (entry != null)
+			return (new Slot(value, null, new AppInfo(mContext, mContext.getPackageManager(), entry.getComponent(),
+					entry.getVersionCode()), entry.getLaunchIntent()));
+		return (new Slot(value, null, null, null));
+	}
+
+	/**
+	 * Resolve an application slot from the package manager, on the model thread.
+	 */
+	private Slot resolve(String value) {
+		PackageManager pm = mContext.getPackageManager();
+
+		try {
+			PackageInfo pi = pm.getPackageInfo(value, 0);
+			ResolveInfo resolveInfo = getResolveInfo(pm, value);
+			if (resolveInfo != null) {
+				Intent launchIntent = pm.getLaunchIntentForPackage(value);
+				if (launchIntent == null)
+					launchIntent = pm.getLeanbackLaunchIntentForPackage(value);
+				return (new Slot(value, null, new AppInfo(mContext, pm, resolveInfo, PackageInfoCompat.getLongVersionCode(pi)), launchIntent));
+			}
+		} catch (PackageManager.NameNotFoundException e) {
+			Log.w(TAG, "resolve: " + value + " not found");
+		}
+		return (new Slot(value, null, null, null));
+	}
+
+	private static ResolveInfo getResolveInfo(PackageManager pm, String packageName) {
+		String[] categories = {Intent.CATEGORY_LAUNCHER, Intent.CATEGORY_LEANBACK_LAUNCHER, null};
+
+		for (String category : categories) {
+			Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+			if (category != null)
+				mainIntent.addCategory(category);
+			mainIntent.setPackage(packageName);
+
+			List<ResolveInfo> intentActivities = pm.queryIntentActivities(mainIntent, 0);
+			if (!intentActivities.isEmpty())
+				return (intentActivities.get(0));
+		}
+		return (null);
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Two level cache of application icons.
+ * <p>
+ * Icons are rendered once from the application resources at the size of the {@link DeviceProfile},
+ * then served from memory or from the cache directory, keyed by package, version code and size.
+ * Bulk loads are spread over a pool of one thread per core.
+ */
+public class IconCache {
+	private static final String TAG = "IconCache";
+	private static final String CACHE_DIRECTORY = "icons";
+	private static final int DECODE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	private static volatile IconCache sInstance;
+
+	private final Context mContext;
+	private final LruCache<String, Bitmap> mIcons;
+	private volatile DeviceProfile mProfile;
+	// bulk decodes, the semaphore bounds the decodes queued or running at once
+	private final ExecutorService mDecoder = Executors.newFixedThreadPool(DECODE_THREADS);
+	private final Semaphore mDecodePermits = new Semaphore(DECODE_THREADS * 2);
+
+	private IconCache(Context context) {
+		mContext = context;
+		mProfile = DeviceProfile.getInstance(context);
+		mIcons = new LruCache<String, Bitmap>(mProfile.getIconCacheSize()) {
+			@Override
+			protected int sizeOf(String key, Bitmap value) {
+				return (value.getByteCount());
+			}
+		};
+	}
+
+	/**
+	 * Called for every icon access, from the decode threads too : only the creation is locked.
+	 */
+	public static IconCache getInstance(Context context) {
+		if (sInstance == null) {
+			synchronized (IconCache.class) {
+				if (sInstance == null)
+					sInstance = new IconCache(context.getApplicationContext());
+			}
+		}
+		return (sInstance);
+	}
+
+	/**
+	 * Take the current {@link DeviceProfile} after it was picked again, icons are then
+	 * rendered at its size and the memory cache gets its budget.
+	 */
+	public void reloadProfile() {
+		mProfile = DeviceProfile.getInstance(mContext);
+		mIcons.resize(mProfile.getIconCacheSize());
+	}
+
+	/**
+	 * @return the icon if it is in memory, null otherwise
+	 */
+	public Drawable peekIcon(String packageName, long versionCode) {
+		Bitmap icon = mIcons.get(getSizedKey(packageName, versionCode));
+		if (icon == null)
+			return (null);
+		return (new BitmapDrawable(mContext.getResources(), icon));
+	}
+
+	/**
+	 * Icon from memory, from disk or rendered from the application resources, in that order.
+	 * Can do file and resource I/O, should not be called on the main thread for a missing icon.
+	 */
+	public Drawable getIcon(PackageManager pm, ResolveInfo resolveInfo, long versionCode) {
+		Drawable cached = getCachedIcon(resolveInfo.activityInfo.packageName, versionCode);
+		if (cached != null)
+			return (cached);
+
+		String key = getSizedKey(resolveInfo.activityInfo.packageName, versionCode);
+		Bitmap icon = render(loadIcon(pm, resolveInfo), mProfile);
+		save(getCacheFile(key), icon);
+		mIcons.put(key, icon);
+		return (new BitmapDrawable(mContext.getResources(), icon));
+	}
+
+	/**
+	 * Icon from memory or from disk, without loading the application resources.
+	 *
+	 * @return null if the icon was never rendered for this version
+	 */
+	public Drawable getCachedIcon(String packageName, long versionCode) {
+		String key = getSizedKey(packageName, versionCode);
+		Bitmap icon = mIcons.get(key);
+
+		if (icon == null) {
+			File file = getCacheFile(key);
+			if (file.exists()) {
+				// 16 bits icons were saved without alpha, others are still decoded with alpha
+				BitmapFactory.Options options = new BitmapFactory.Options();
+				options.inPreferredConfig = mProfile.getIconConfig(true);
+				icon = BitmapFactory.decodeFile(file.getPath(), options);
+			}
+			if (icon == null)
+				return (null);
+			mIcons.put(key, icon);
+		}
+		return (new BitmapDrawable(mContext.getResources(), icon));
+	}
+
+	/**
+	 * @return true if the icon is in memory or in the cache directory, without decoding it
+	 */
+	public boolean hasIcon(String packageName, long versionCode) {
+		String key = getSizedKey(packageName, versionCode);
+		return (mIcons.get(key) != null || getCacheFile(key).exists());
+	}
+
+	/**
+	 * Load the icons of many applications over all the cores, blocking until they are loaded.
+	 * Icons are returned in the order of the applications, null for an icon which failed.
+	 */
+	public List<Drawable> loadIcons(List<AppInfo> applications) {
+		List<Future<Drawable>> futures = new ArrayList<>(applications.size());
+		List<Drawable> icons = new ArrayList<>(applications.size());
+
+		try {
+			for (final AppInfo appInfo : applications) {
+				mDecodePermits.acquire();
+				try {
+					futures.add(mDecoder.submit(() -> {
+						try {
+							return (appInfo.getIcon());
+						} finally {
+							mDecodePermits.release();
+						}
+					}));
+				} catch (RuntimeException e) {
+					mDecodePermits.release();
+					throw e;
+				}
+			}
+			for (Future<Drawable> future : futures) {
+				try {
+					icons.add(future.get());
+				} catch (ExecutionException e) {
+					Log.e(TAG, "loadIcons", e.getCause());
+					icons.add(null);
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Future<Drawable> future : futures) {
+				future.cancel(false);
+			}
+			Thread.currentThread().interrupt();
+		}
+		return (icons);
+	}
+
+	public void trimMemory() {
+		mIcons.evictAll();
+	}
+
+	/**
+	 * Delete the icon files of packages no longer installed, of other versions
+	 * or rendered at another size than the current profile.
+	 *
+	 * @param versionCodes version codes of the installed packages
+	 * @return the number of deleted files
+	 */
+	public int removeStaleIcons(Map<String, Long> versionCodes) {
+		File[] files = new File(mContext.getCacheDir(), CACHE_DIRECTORY).listFiles();
+		String suffix = "_" + mProfile.getIconSize() + ".png";
+		int removed = 0;
+
+		if (files == null)
+			return (0);
+
+		for (File file : files) {
+			String name = file.getName();
+			boolean valid = false;
+
+			if (name.endsWith(suffix)) {
+				String key = name.substring(0, name.length() - suffix.length());
+				int separator = key.lastIndexOf('_');
+				if (separator > 0) {
+					Long versionCode = versionCodes.get(key.substring(0, separator));
+					valid = versionCode != null && key.equals(getKey(key.substring(0, separator), versionCode));
+				}
+			}
+			if (!valid && file.delete())
+				removed++;
+		}
+		return (removed);
+	}
+
+	private static Drawable loadIcon(PackageManager pm, ResolveInfo resolveInfo) {
+		ApplicationInfo applicationInfo = resolveInfo.activityInfo.applicationInfo;
+		try {
+			Resources resourcesForApplication = pm.getResourcesForApplication(applicationInfo);
+			Drawable icon = resourcesForApplication.getDrawableForDensity(applicationInfo.icon, DisplayMetrics.DENSITY_XXXHIGH, null);
+			if (icon != null)
+				return (icon);
+		} catch (Exception e) {
+			Log.e(TAG, "error getting Hi Res Icon :", e);
+		}
+		return (applicationInfo.loadIcon(pm));
+	}
+
+	/**
+	 * Draw the icon centered in a square of the profile size, scaled to fit with its aspect ratio
+	 * like the tile image view does.
+	 */
+	private static Bitmap render(Drawable drawable, DeviceProfile profile) {
+		int size = profile.getIconSize();
+		int width = drawable.getIntrinsicWidth();
+		int height = drawable.getIntrinsicHeight();
+		if (width <= 0 || height <= 0) {
+			width = size;
+			height = size;
+		}
+		float scale = Math.min((float) size / width, (float) size / height);
+		width = Math.round(width * scale);
+		height = Math.round(height * scale);
+
+		// a letterboxed icon has transparent borders, it is not opaque any more
+		boolean opaque = drawable.getOpacity() == PixelFormat.OPAQUE && width == size && height == size;
+		Bitmap icon = Bitmap.createBitmap(size, size, profile.getIconConfig(opaque));
+		Canvas canvas = new Canvas(icon);
+		int left = (size - width) / 2;
+		int top = (size - height) / 2;
+
+		drawable.setBounds(left, top, left + width, top + height);
+		drawable.draw(canvas);
+		return (icon);
+	}
+
+	private static void save(File file, Bitmap icon) {
+		File directory = file.getParentFile();
+		if (directory != null && !directory.exists() && !directory.mkdirs())
+			return;
+
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+		} catch (IOException e) {
+			Log.e(TAG, "save: " + file, e);
+		}
+	}
+
+	private File getCacheFile(String key) {
+		return (new File(new File(mContext.getCacheDir(), CACHE_DIRECTORY), key + ".png"));
+	}
+
+	static String getKey(String packageName, long versionCode) {
+		return (packageName + "_" + versionCode);
+	}
+
+	/**
+	 * @return the key of the icon rendered for this version at the current size
+	 */
+	public String getIconKey(String packageName, long versionCode) {
+		return (getSizedKey(packageName, versionCode));
+	}
+
+	private String getSizedKey(String packageName, long versionCode) {
+		return (getKey(packageName, versionCode) + "_" + mProfile.getIconSize());
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+/**
+ * Idle state of the home screen.
+ * <p>
+ * The home screen is idle when the screen is off, when it is stopped (another activity,
+ * standby or daydream) or when no input was received for {@link #INPUT_TIMEOUT_MS}.
+ * The listener is called on the main thread when the state changes.
+ */
+public class IdleMonitor {
+	public static final long INPUT_TIMEOUT_MS = 5 * 60 * 1000;
+
+	private final Context mContext;
+	private final Listener mListener;
+	private final Handler mHandler = new Handler();
+	private boolean mScreenOn;
+	private boolean mStarted = false;
+	private boolean mInputTimeout = false;
+	private boolean mIdle = true;
+	private long mLastInput = SystemClock.uptimeMillis();
+
+	public interface Listener {
+		void onIdle();
+
+		void onWake();
+	}
+
+	private final BroadcastReceiver mScreenReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			mScreenOn = Intent.ACTION_SCREEN_ON.equals(intent.getAction());
+			if (mScreenOn)
+				onUserInteraction();
+			update();
+		}
+	};
+
+	// checks the last input time instead of posting again on each key event
+	private final Runnable mInputCheck = new Runnable() {
+		@Override
+		public void run() {
+			long remaining = mLastInput + INPUT_TIMEOUT_MS - SystemClock.uptimeMillis();
+			if (remaining > 0) {
+				mHandler.postDelayed(this, remaining);
+			} else {
+				mInputTimeout = true;
+				update();
+			}
+		}
+	};
+
+	public IdleMonitor(Context context, Listener listener) {
+		mContext = context;
+		mListener = listener;
+
+		PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+		mScreenOn = pm == null || pm.isInteractive();
+
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(Intent.ACTION_SCREEN_ON);
+		filter.addAction(Intent.ACTION_SCREEN_OFF);
+		context.registerReceiver(mScreenReceiver, filter);
+	}
+
+	public void release() {
+		mHandler.removeCallbacks(mInputCheck);
+		mContext.unregisterReceiver(mScreenReceiver);
+	}
+
+	public void setStarted(boolean started) {
+		mStarted = started;
+		if (started)
+			onUserInteraction();
+		update();
+	}
+
+	public void onUserInteraction() {
+		mLastInput = SystemClock.uptimeMillis();
+		if (mInputTimeout) {
+			mInputTimeout = false;
+			update();
+		}
+	}
+
+	public boolean isIdle() {
+		return mIdle;
+	}
+
+	/**
+	 * @return true if the home screen is still shown while idle, after the input timeout
+	 */
+	public boolean isVisible() {
+		return (mScreenOn && mStarted);
+	}
+
+	private void update() {
+		boolean idle = !mScreenOn || !mStarted || mInputTimeout;
+
+		mHandler.removeCallbacks(mInputCheck);
+		if (!idle)
+			mHandler.postDelayed(mInputCheck, INPUT_TIMEOUT_MS);
+
+		if (idle == mIdle)
+			return;
+		mIdle = idle;
+		if (idle)
+			mListener.onIdle();
+		else
+			mListener.onWake();
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.support.v4.content.LocalBroadcastManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Persistent cache of application labels, keyed by package, version code and locale list.
+ * <p>
+ * Loading a label loads the resources of the target application, the cache avoids it on every
+ * enumeration. When the locales change, cached labels are still returned while they are loaded
+ * again in background, then {@link #ACTION_LABELS_CHANGED} is sent locally.
+ */
+public class LabelCache {
+	private static final String TAG = "LabelCache";
+	private static final String PREFERENCES_NAME = "labels";
+	public static final String ACTION_LABELS_CHANGED = "com.alexpozzani.tvlauncher.LABELS_CHANGED";
+
+	// entry : [versionCode, locales, activity, label]
+	private static final int ENTRY_VERSION = 0;
+	private static final int ENTRY_LOCALES = 1;
+	private static final int ENTRY_ACTIVITY = 2;
+	private static final int ENTRY_LABEL = 3;
+
+	private static LabelCache sInstance;
+
+	private final Context mContext;
+	private final SharedPreferences mPreferences;
+	private final Executor mExecutor = Executors.newSingleThreadExecutor();
+	private final Set<String> mRefreshing = new HashSet<>();
+
+	private LabelCache(Context context) {
+		mContext = context;
+		mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+		context.registerReceiver(new BroadcastReceiver() {
+			@Override
+			public void onReceive(Context context, Intent intent) {
+				refresh();
+			}
+		}, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+	}
+
+	public static synchronized LabelCache getInstance(Context context) {
+		if (sInstance == null)
+			sInstance = new LabelCache(context.getApplicationContext());
+		return (sInstance);
+	}
+
+	private String getLocales() {
+		return (mContext.getResources().getConfiguration().getLocales().toLanguageTags());
+	}
+
+	/**
+	 * @return the cached label of the activity for this version, null if it is not cached
+	 */
+	public String peekLabel(String packageName, String activity, long versionCode) {
+		JSONArray entry = getEntry(packageName);
+
+		if (entry != null && entry.optLong(ENTRY_VERSION) == versionCode
+				&& activity.equals(entry.optString(ENTRY_ACTIVITY))) {
+			if (!getLocales().equals(entry.optString(ENTRY_LOCALES)))
+				refresh();
+			return (entry.optString(ENTRY_LABEL));
+		}
+		return (null);
+	}
+
+	public String getLabel(PackageManager pm, ResolveInfo resolveInfo, long versionCode) {
+		String packageName = resolveInfo.activityInfo.packageName;
+		String label = peekLabel(packageName, resolveInfo.activityInfo.name, versionCode);
+		if (label != null)
+			return (label);
+
+		label = loadLabel(pm, resolveInfo);
+		putEntry(packageName, versionCode, resolveInfo.activityInfo.name, label);
+		return (label);
+	}
+
+	/**
+	 * Labels are always loaded from the {@link ResolveInfo} of the launch activity,
+	 * where the label of the main intent filter wins over the activity label.
+	 */
+	private static String loadLabel(PackageManager pm, ResolveInfo resolveInfo) {
+		try {
+			return (resolveInfo.loadLabel(pm).toString());
+		} catch (Exception e) {
+			return (resolveInfo.activityInfo.packageName);
+		}
+	}
+
+	/**
+	 * @return the activity resolved from the main intent of its package, as the enumeration
+	 * resolved it when its label was first loaded, null if it is gone
+	 */
+	private static ResolveInfo resolve(PackageManager pm, String packageName, String activity) {
+		Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+		mainIntent.setPackage(packageName);
+
+		for (ResolveInfo resolveInfo : pm.queryIntentActivities(mainIntent, 0)) {
+			if (activity.equals(resolveInfo.activityInfo.name))
+				return (resolveInfo);
+		}
+		return (null);
+	}
+
+	private JSONArray getEntry(String packageName) {
+		String value = mPreferences.getString(packageName, null);
+		if (value == null)
+			return (null);
+
+		try {
+			return (new JSONArray(value));
+		} catch (JSONException e) {
+			return (null);
+		}
+	}
+
+	private void putEntry(String packageName, long versionCode, String activity, String label) {
+		JSONArray entry = new JSONArray();
+		entry.put(versionCode);
+		entry.put(getLocales());
+		entry.put(activity);
+		entry.put(label);
+		mPreferences.edit().putString(packageName, entry.toString()).apply();
+	}
+
+	public void remove(String packageName) {
+		mPreferences.edit().remove(packageName).apply();
+	}
+
+	/**
+	 * Remove the labels of packages no longer installed or cached for another version.
+	 *
+	 * @param versionCodes version codes of the installed packages
+	 * @return the number of removed labels
+	 */
+	public int removeStaleLabels(Map<String, Long> versionCodes) {
+		SharedPreferences.Editor editor = mPreferences.edit();
+		int removed = 0;
+
+		for (String packageName : mPreferences.getAll().keySet()) {
+			JSONArray entry = getEntry(packageName);
+			Long versionCode = versionCodes.get(packageName);
+			if (entry == null || versionCode == null || entry.optLong(ENTRY_VERSION) != versionCode) {
+				editor.remove(packageName);
+				removed++;
+			}
+		}
+		editor.apply();
+		return (removed);
+	}
+
+	/**
+	 * Load again, in background, the labels cached for another locale list.
+	 */
+	public void refresh() {
+		final PackageManager pm = mContext.getPackageManager();
+		final List<String> packages = new ArrayList<>();
+
+		synchronized (mRefreshing) {
+			for (Map.Entry<String, ?> entry : mPreferences.getAll().entrySet()) {
+				if (!mRefreshing.contains(entry.getKey())) {
+					mRefreshing.add(entry.getKey());
+					packages.add(entry.getKey());
+				}
+			}
+		}
+		if (packages.isEmpty())
+			return;
+
+		mExecutor.execute(() -> {
+			String locales = getLocales();
+			int refreshed = 0;
+
+			for (String packageName : packages) {
+				JSONArray entry = getEntry(packageName);
+				if (entry == null || locales.equals(entry.optString(ENTRY_LOCALES)))
+					continue;
+
+				String activity = entry.optString(ENTRY_ACTIVITY);
+				ResolveInfo resolveInfo = resolve(pm, packageName, activity);
+				if (resolveInfo == null) {
+					remove(packageName);
+					continue;
+				}
+				putEntry(packageName, entry.optLong(ENTRY_VERSION), activity, loadLabel(pm, resolveInfo));
+				refreshed++;
+			}
+
+			synchronized (mRefreshing) {
+				mRefreshing.removeAll(packages);
+			}
+
+			if (refreshed > 0) {
+				Log.i(TAG, "refresh: " + refreshed + " labels for " + locales);
+				LocalBroadcastManager.getInstance(mContext).sendBroadcast(new Intent(ACTION_LABELS_CHANGED));
+			}
+		});
+	}
+}
@@ -20,19 +20,35 @@ package com.alexpozzani.tvlauncher;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.app.FragmentActivity;
+import android.view.KeyEvent;
 import android.view.View;
 import android.view.WindowManager;
 
+import com.alexpozzani.tvlauncher.debug.FrameMetricsCollector;
+import com.alexpozzani.tvlauncher.debug.StallWatchdog;
 import com.alexpozzani.tvlauncher.fragments.ApplicationFragment;
+import com.alexpozzani.tvlauncher.views.NavigationController;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Arrays;
 
 public class Launcher extends FragmentActivity {
+	private FrameMetricsCollector mFrameMetrics;
+	private NavigationController mNavigation;
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 
+		if (new Setup(this).stallWatchdog())
+			StallWatchdog.start();
+		else
+			StallWatchdog.stop();
+
 		setFullScreen();
 		setContentView(R.layout.activity_launcher);
+		mNavigation = new NavigationController(getWindow().getDecorView());
 
 		getSupportFragmentManager().beginTransaction()
 				.replace(R.id.container, ApplicationFragment.newInstance(), ApplicationFragment.TAG)
@@ -43,11 +59,78 @@ public class Launcher extends FragmentActivity {
 	protected void onResume() {
 		super.onResume();
 		setFullScreen();
+
+		if (new Setup(this).frameMetrics()) {
+			mFrameMetrics = FrameMetricsCollector.getInstance(this);
+			mFrameMetrics.attach(getWindow());
+		}
+	}
+
+	@Override
+	protected void onPause() {
+		mNavigation.cancel();
+		if (mFrameMetrics != null) {
+			mFrameMetrics.detach(getWindow());
+			mFrameMetrics.save();
+			mFrameMetrics = null;
+		}
+		super.onPause();
+	}
+
+	@Override
+	public boolean dispatchKeyEvent(KeyEvent event) {
+		if (mFrameMetrics != null && event.getAction() == KeyEvent.ACTION_DOWN)
+			mFrameMetrics.setInteraction(FrameMetricsCollector.INTERACTION_GRID_FOCUS);
+		if (mNavigation.dispatchKeyEvent(event)) {
+			// consumed repeats do not reach the activity dispatch, which reports the interaction
+			onUserInteraction();
+			return (true);
+		}
+		if (event.getAction() == KeyEvent.ACTION_DOWN) {
+			ApplicationFragment fragment = (ApplicationFragment) getSupportFragmentManager().findFragmentByTag(ApplicationFragment.TAG);
+			if (fragment != null && fragment.onDirectLaunchKey(event)) {
+				onUserInteraction();
+				return (true);
+			}
+		}
+		return super.dispatchKeyEvent(event);
+	}
+
+	@Override
+	public void onUserInteraction() {
+		super.onUserInteraction();
+		ApplicationFragment fragment = (ApplicationFragment) getSupportFragmentManager().findFragmentByTag(ApplicationFragment.TAG);
+		if (fragment != null)
+			fragment.onUserInteraction();
+	}
+
+	@Override
+	public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+		super.dump(prefix, fd, writer, args);
+
+		FrameMetricsCollector frameMetrics = FrameMetricsCollector.peekInstance();
+		if (frameMetrics != null) {
+			if (args != null && Arrays.asList(args).contains(FrameMetricsCollector.ARG_RESET))
+				frameMetrics.reset();
+			frameMetrics.dump(prefix, writer);
+		}
+
+		DeviceProfile.getInstance(this).dump(prefix, writer);
+		if (mNavigation != null)
+			mNavigation.dump(prefix, writer);
+		CacheMaintenance.getInstance(this).dump(prefix, writer);
+
+		StallWatchdog watchdog = StallWatchdog.getInstance();
+		if (watchdog != null)
+			watchdog.dump(prefix, writer);
 	}
 
 	@Override
 	public void onBackPressed() {
-		//ignore event
+		ApplicationFragment fragment = (ApplicationFragment) getSupportFragmentManager().findFragmentByTag(ApplicationFragment.TAG);
+		if (fragment != null)
+			fragment.onBackPressed();
+		//ignore event otherwise
 	}
 
 	private void setFullScreen() {
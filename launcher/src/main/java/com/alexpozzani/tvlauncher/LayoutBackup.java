@@ -0,0 +1,262 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+import android.util.SparseArray;
+
+import com.alexpozzani.tvlauncher.activities.Preferences;
+import com.alexpozzani.tvlauncher.fragments.ApplicationFragment;
+import com.alexpozzani.tvlauncher.views.ApplicationView;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Export and import of the whole home configuration (grid, margins, transparency and slots)
+ * as a versioned JSON file in the application external files directory.
+ */
+public class LayoutBackup {
+	public static final int VERSION = 1;
+	private static final String FILE_NAME = "layout.json";
+
+	private static final String KEY_VERSION = "version";
+	private static final String KEY_GRID_X = "grid_x";
+	private static final String KEY_GRID_Y = "grid_y";
+	private static final String KEY_MARGIN_X = "margin_x";
+	private static final String KEY_MARGIN_Y = "margin_y";
+	private static final String KEY_DEFAULT_TRANSPARENCY = "default_transparency";
+	private static final String KEY_TRANSPARENCY = "transparency";
+	private static final String KEY_SLOTS = "slots";
+
+	public static class InvalidLayoutException extends Exception {
+		InvalidLayoutException(String message) {
+			super(message);
+		}
+
+		InvalidLayoutException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+
+	public static File getFile(Context context) {
+		File directory = context.getExternalFilesDir(null);
+		if (directory == null)
+			directory = context.getFilesDir();
+		return (new File(directory, FILE_NAME));
+	}
+
+	public static File exportLayout(Context context) throws IOException {
+		Setup setup = new Setup(context);
+		SharedPreferences slots = context.getSharedPreferences(ApplicationFragment.PREFERENCES_NAME, Context.MODE_PRIVATE);
+		File file = getFile(context);
+
+		try {
+			JSONObject layout = new JSONObject();
+			JSONObject slotsObject = new JSONObject();
+
+			layout.put(KEY_VERSION, VERSION);
+			layout.put(KEY_GRID_X, setup.getGridX());
+			layout.put(KEY_GRID_Y, setup.getGridY());
+			layout.put(KEY_MARGIN_X, setup.getMarginX());
+			layout.put(KEY_MARGIN_Y, setup.getMarginY());
+			layout.put(KEY_DEFAULT_TRANSPARENCY, setup.isDefaultTransparency());
+			layout.put(KEY_TRANSPARENCY, setup.getTransparency());
+
+			for (int position = 0; position < setup.getSlotCount(); position++) {
+				String value = slots.getString(ApplicationView.getPreferenceKey(position), null);
+				if (!TextUtils.isEmpty(value))
+					slotsObject.put(String.valueOf(position), value);
+			}
+			layout.put(KEY_SLOTS, slotsObject);
+
+			try (OutputStream out = new FileOutputStream(file)) {
+				out.write(layout.toString(2).getBytes(StandardCharsets.UTF_8));
+			}
+		} catch (JSONException e) {
+			throw new IOException(e);
+		}
+		return (file);
+	}
+
+	/**
+	 * Validate the layout file, resolve all of its packages in one pass, then write
+	 * the slots and the settings. Nothing is written if validation fails, the previous
+	 * slots are restored if the settings can not be written.
+	 *
+	 * @return number of slots dropped because their package is not installed
+	 */
+	public static int importLayout(Context context) throws IOException, InvalidLayoutException {
+		JSONObject layout = read(getFile(context));
+		int version = layout.optInt(KEY_VERSION, -1);
+
+		if (version < 1 || version > VERSION)
+			throw new InvalidLayoutException("Unsupported layout version " + version);
+
+		int gridX = getInt(context, layout, KEY_GRID_X, R.array.grid_x);
+		int gridY = getInt(context, layout, KEY_GRID_Y, R.array.grid_y);
+		int marginX = getInt(context, layout, KEY_MARGIN_X, R.array.margins);
+		int marginY = getInt(context, layout, KEY_MARGIN_Y, R.array.margins);
+		boolean defaultTransparency = layout.optBoolean(KEY_DEFAULT_TRANSPARENCY, true);
+		double transparency = layout.optDouble(KEY_TRANSPARENCY, 0.5);
+
+		if (Double.isNaN(transparency) || transparency < 0 || transparency > 1)
+			throw new InvalidLayoutException("Invalid transparency " + transparency);
+
+		SparseArray<String> slots = getSlots(layout.optJSONObject(KEY_SLOTS), gridX * gridY);
+		int dropped = resolveSlots(Utils.getLaunchablePackages(context), slots);
+
+		SharedPreferences.Editor settings = PreferenceManager.getDefaultSharedPreferences(context).edit()
+				.putString(Preferences.PREFERENCE_GRID_X, String.valueOf(gridX))
+				.putString(Preferences.PREFERENCE_GRID_Y, String.valueOf(gridY))
+				.putString(Preferences.PREFERENCE_MARGIN_X, String.valueOf(marginX))
+				.putString(Preferences.PREFERENCE_MARGIN_Y, String.valueOf(marginY))
+				.putBoolean(Preferences.PREFERENCE_DEFAULT_TRANSPARENCY, defaultTransparency)
+				.putFloat(Preferences.PREFERENCE_TRANSPARENCY, (float) transparency)
+				.putBoolean(Preferences.PREFERENCE_FIRST_LAUNCH, false);
+
+		SharedPreferences applicationPreferences = context.getSharedPreferences(ApplicationFragment.PREFERENCES_NAME, Context.MODE_PRIVATE);
+		Map<String, ?> previous = applicationPreferences.getAll();
+		SharedPreferences.Editor applications = applicationPreferences.edit().clear();
+		for (int i = 0; i < slots.size(); i++) {
+			if (slots.valueAt(i) != null)
+				applications.putString(ApplicationView.getPreferenceKey(slots.keyAt(i)), slots.valueAt(i));
+		}
+
+		// the slots go first : the new grid size is only applied once they are written
+		if (!applications.commit())
+			throw new IOException("Unable to write the slots");
+		try {
+			if (!settings.commit()) {
+				restoreSlots(applicationPreferences, previous);
+				throw new IOException("Unable to write the settings");
+			}
+		} finally {
+			GridModel.getInstance(context).invalidate();
+		}
+
+		return (dropped);
+	}
+
+	private static void restoreSlots(SharedPreferences applications, Map<String, ?> previous) {
+		SharedPreferences.Editor editor = applications.edit().clear();
+
+		for (Map.Entry<String, ?> entry : previous.entrySet()) {
+			if (entry.getValue() instanceof String)
+				editor.putString(entry.getKey(), (String) entry.getValue());
+		}
+		editor.commit();
+	}
+
+	private static SparseArray<String> getSlots(JSONObject slotsObject, int slotCount) throws InvalidLayoutException {
+		SparseArray<String> slots = new SparseArray<>();
+		if (slotsObject == null)
+			return (slots);
+
+		Iterator<String> keys = slotsObject.keys();
+		while (keys.hasNext()) {
+			String key = keys.next();
+			// a JSON null is an empty slot, not a package named "null"
+			slots.put(parsePosition(key, slotCount), slotsObject.isNull(key) ? null : slotsObject.optString(key, null));
+		}
+		return (slots);
+	}
+
+	public static int parsePosition(String key, int slotCount) throws InvalidLayoutException {
+		int position;
+
+		try {
+			position = Integer.parseInt(key);
+		} catch (NumberFormatException e) {
+			throw new InvalidLayoutException("Invalid slot " + key, e);
+		}
+		if (position < 0 || position >= slotCount)
+			throw new InvalidLayoutException("Slot " + position + " is outside of the grid");
+		return (position);
+	}
+
+	/**
+	 * Resolve the slot values against the installed packages, in place.
+	 * Packages which are not installed are removed, a slot left without package gets a null value.
+	 *
+	 * @return number of requested slots dropped because none of their packages is installed
+	 */
+	public static int resolveSlots(Set<String> installed, SparseArray<String> slots) {
+		int dropped = 0;
+
+		for (int i = 0; i < slots.size(); i++) {
+			Folder requested = Folder.fromPreference(slots.valueAt(i));
+			List<String> packages = new ArrayList<>();
+
+			for (String packageName : requested.getPackages()) {
+				if (installed.contains(packageName))
+					packages.add(packageName);
+			}
+
+			String value = new Folder(packages).toPreference();
+			if (value == null && requested.size() > 0)
+				dropped++;
+			slots.setValueAt(i, value);
+		}
+		return (dropped);
+	}
+
+	private static int getInt(Context context, JSONObject layout, String key, int allowedResId) throws InvalidLayoutException {
+		int value = layout.optInt(key, -1);
+		List<String> allowed = Arrays.asList(context.getResources().getStringArray(allowedResId));
+
+		if (!allowed.contains(String.valueOf(value)))
+			throw new InvalidLayoutException("Invalid " + key + " " + value);
+		return (value);
+	}
+
+	private static JSONObject read(File file) throws IOException, InvalidLayoutException {
+		byte[] content = new byte[(int) file.length()];
+
+		try (InputStream in = new FileInputStream(file)) {
+			int offset = 0;
+			int count;
+			while (offset < content.length && (count = in.read(content, offset, content.length - offset)) > 0) {
+				offset += count;
+			}
+		}
+
+		try {
+			return (new JSONObject(new String(content, StandardCharsets.UTF_8)));
+		} catch (JSONException e) {
+			throw new InvalidLayoutException("Invalid layout file", e);
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.content.LocalBroadcastManager;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.alexpozzani.tvlauncher.fragments.ApplicationFragment;
+import com.alexpozzani.tvlauncher.views.ApplicationView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headless provisioning API for device management agents.
+ * <p>
+ * Callers holding the WRITE_LAYOUT permission push slots with
+ * {@code getContentResolver().call(uri, "apply_slots", null, extras)}, where extras holds a
+ * {@link #EXTRA_SLOTS} bundle mapping slot positions ("0", "1", ...) to a package name,
+ * a folder value or an empty string to clear the slot. With {@link #EXTRA_REPLACE} the map
+ * is the complete layout and every other slot is cleared.
+ * <p>
+ * A request is applied with a single write of the layout preferences, under the lock of the
+ * {@link GridModel}, then the running home screen is told which slots changed.
+ */
+public class LayoutProvider extends ContentProvider {
+	private static final String TAG = "LayoutProvider";
+	public static final String METHOD_APPLY_SLOTS = "apply_slots";
+	public static final String EXTRA_SLOTS = "slots";
+	public static final String EXTRA_REPLACE = "replace";
+	public static final String RESULT_CHANGED = "changed";
+	public static final String RESULT_DROPPED = "dropped";
+	public static final String ACTION_SLOTS_CHANGED = "com.alexpozzani.tvlauncher.SLOTS_CHANGED";
+	public static final String EXTRA_POSITIONS = "positions";
+
+	// written with the slots : the first launch keeps a provisioned layout
+	private static final String KEY_PROVISIONED = "provisioned";
+
+	private static final String PERMISSION_SUFFIX = ".permission.WRITE_LAYOUT";
+
+	@Override
+	public boolean onCreate() {
+		return (true);
+	}
+
+	@Nullable
+	@Override
+	public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+		Context context = getContext();
+		if (context == null)
+			return (null);
+
+		context.enforceCallingOrSelfPermission(context.getPackageName() + PERMISSION_SUFFIX, TAG);
+
+		if (!METHOD_APPLY_SLOTS.equals(method))
+			throw new IllegalArgumentException("Unknown method " + method);
+
+		Bundle requested = extras != null ? extras.getBundle(EXTRA_SLOTS) : null;
+		if (requested == null)
+			throw new IllegalArgumentException("Missing " + EXTRA_SLOTS);
+
+		return (applySlots(context, requested, extras.getBoolean(EXTRA_REPLACE, false)));
+	}
+
+	/**
+	 * @return true if a layout was provisioned through the provider
+	 */
+	public static boolean isProvisioned(Context context) {
+		return (context.getSharedPreferences(ApplicationFragment.PREFERENCES_NAME, Context.MODE_PRIVATE)
+				.getBoolean(KEY_PROVISIONED, false));
+	}
+
+	private static Bundle applySlots(Context context, Bundle requested, boolean replace) {
+		int slotCount = new Setup(context).getSlotCount();
+		SparseArray<String> slots = new SparseArray<>();
+
+		try {
+			for (String key : requested.keySet()) {
+				Object value = requested.get(key);
+				if (value != null && !(value instanceof String))
+					throw new IllegalArgumentException("Slot " + key + " is not a string");
+				slots.put(LayoutBackup.parsePosition(key, slotCount), (String) value);
+			}
+		} catch (LayoutBackup.InvalidLayoutException e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+
+		int dropped = LayoutBackup.resolveSlots(Utils.getLaunchablePackages(context), slots);
+		int[] positions;
+
+		// the model rewrites slots under its lock, the read and the write of the request must not interleave
+		GridModel model = GridModel.getInstance(context);
+		synchronized (model) {
+			positions = writeSlots(context, slots, slotCount, replace);
+			if (positions.length > 0)
+				model.invalidate(positions);
+		}
+
+		if (positions.length > 0)
+			LocalBroadcastManager.getInstance(context).sendBroadcast(
+					new Intent(ACTION_SLOTS_CHANGED).putExtra(EXTRA_POSITIONS, positions)
+			);
+		Log.i(TAG, "applySlots: " + positions.length + " changed, " + dropped + " dropped");
+
+		Bundle result = new Bundle();
+		result.putIntArray(RESULT_CHANGED, positions);
+		result.putInt(RESULT_DROPPED, dropped);
+		return (result);
+	}
+
+	/**
+	 * Write the changed slots, and the provisioned flag, in a single commit.
+	 *
+	 * @return the positions of the changed slots
+	 */
+	private static int[] writeSlots(Context context, SparseArray<String> slots, int slotCount, boolean replace) {
+		SharedPreferences prefs = context.getSharedPreferences(ApplicationFragment.PREFERENCES_NAME, Context.MODE_PRIVATE);
+		SharedPreferences.Editor editor = prefs.edit();
+		List<Integer> changed = new ArrayList<>();
+
+		for (int position = 0; position < slotCount; position++) {
+			String key = ApplicationView.getPreferenceKey(position);
+			String current = prefs.getString(key, null);
+			String value;
+
+			if (slots.indexOfKey(position) >= 0)
+				value = slots.get(position);
+			else if (replace)
+				value = null;
+			else
+				continue;
+
+			if (TextUtils.equals(current, value))
+				continue;
+
+			if (value == null)
+				editor.remove(key);
+			else
+				editor.putString(key, value);
+			changed.add(position);
+		}
+
+		int[] positions = new int[changed.size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = changed.get(i);
+		}
+
+		if (positions.length > 0) {
+			// layout is provisioned, default applications must not be added over it
+			editor.putBoolean(KEY_PROVISIONED, true);
+			if (!editor.commit())
+				throw new IllegalStateException("Unable to write layout");
+		}
+		return (positions);
+	}
+
+	@Nullable
+	@Override
+	public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+		return (null);
+	}
+
+	@Nullable
+	@Override
+	public String getType(@NonNull Uri uri) {
+		return (null);
+	}
+
+	@Nullable
+	@Override
+	public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+		throw new UnsupportedOperationException("Use call(" + METHOD_APPLY_SLOTS + ")");
+	}
+
+	@Override
+	public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+		throw new UnsupportedOperationException("Use call(" + METHOD_APPLY_SLOTS + ")");
+	}
+
+	@Override
+	public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
+		throw new UnsupportedOperationException("Use call(" + METHOD_APPLY_SLOTS + ")");
+	}
+}
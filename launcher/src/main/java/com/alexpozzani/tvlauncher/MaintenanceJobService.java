@@ -0,0 +1,39 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+
+/**
+ * Runs the {@link CacheMaintenance} when the job scheduler starts the maintenance job.
+ */
+public class MaintenanceJobService extends JobService {
+	@Override
+	public boolean onStartJob(final JobParameters params) {
+		CacheMaintenance.getInstance(this).runAsync(() -> jobFinished(params, false));
+		return (true);
+	}
+
+	@Override
+	public boolean onStopJob(JobParameters params) {
+		// the constraints are no longer met, the cancelled run is done again on the next job
+		CacheMaintenance.getInstance(this).cancel();
+		return (false);
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Snapshot of the resolved launchable packages, so the grid binds at startup without
+ * enumerating the launcher activities.
+ * <p>
+ * The index is a compact binary file read through a memory mapped buffer :
+ * <pre>
+ * int magic, int version, int count
+ * count * (utf package, utf activity, int labelRes, utf iconKey, long versionCode, int flags)
+ * </pre>
+ * where an utf string is a short byte length followed by the UTF-8 bytes.
+ * Once the grid is shown, {@link #verify()} checks the index against the package manager
+ * and rewrites it when packages differ.
+ */
+public class PackageIndex {
+	private static final String TAG = "PackageIndex";
+	private static final String INDEX_FILE = "package_index.bin";
+	private static final int MAGIC = 0x4C54504B;
+	private static final int VERSION = 1;
+
+	public static final int FLAG_LEANBACK = 0x01;
+	public static final int FLAG_SYSTEM = 0x02;
+
+	private static PackageIndex sInstance;
+
+	private final Context mContext;
+	private Map<String, Entry> mEntries;
+	private boolean mVerified = false;
+
+	public static class Entry {
+		final String mPackageName;
+		final String mActivity;
+		final int mLabelRes;
+		final String mIconKey;
+		final long mVersionCode;
+		final int mFlags;
+
+		Entry(String packageName, String activity, int labelRes, String iconKey, long versionCode, int flags) {
+			mPackageName = packageName;
+			mActivity = activity;
+			mLabelRes = labelRes;
+			mIconKey = iconKey;
+			mVersionCode = versionCode;
+			mFlags = flags;
+		}
+
+		public ComponentName getComponent() {
+			return (new ComponentName(mPackageName, mActivity));
+		}
+
+		public long getVersionCode() {
+			return mVersionCode;
+		}
+
+		/**
+		 * Same intent as {@link PackageManager#getLaunchIntentForPackage(String)} would return.
+		 */
+		public Intent getLaunchIntent() {
+			return (new Intent(Intent.ACTION_MAIN)
+					.addCategory((mFlags & FLAG_LEANBACK) != 0 ? Intent.CATEGORY_LEANBACK_LAUNCHER : Intent.CATEGORY_LAUNCHER)
+					.setComponent(getComponent())
+					.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK));
+		}
+
+		boolean sameAs(Entry other) {
+			return (other != null && mPackageName.equals(other.mPackageName) && mActivity.equals(other.mActivity)
+					&& mLabelRes == other.mLabelRes && mIconKey.equals(other.mIconKey)
+					&& mVersionCode == other.mVersionCode && mFlags == other.mFlags);
+		}
+	}
+
+	private PackageIndex(Context context) {
+		mContext = context;
+	}
+
+	public static synchronized PackageIndex getInstance(Context context) {
+		if (sInstance == null)
+			sInstance = new PackageIndex(context.getApplicationContext());
+		return (sInstance);
+	}
+
+	/**
+	 * @return the indexed entry of the package, null if the package is not indexed
+	 */
+	public synchronized Entry get(String packageName) {
+		if (mEntries == null)
+			mEntries = read(getFile());
+		return (mEntries.get(packageName));
+	}
+
+	/**
+	 * Forget a package which changed while the process runs, until the index is verified again.
+	 */
+	public synchronized void remove(String packageName) {
+		if (mEntries != null)
+			mEntries.remove(packageName);
+	}
+
+	/**
+	 * Check the index against the package manager, once per process, on the calling thread.
+	 *
+	 * @return the packages which were added, removed or changed since the index was written
+	 */
+	public Set<String> verify() {
+		synchronized (this) {
+			if (mVerified)
+				return (new HashSet<>());
+			mVerified = true;
+			if (mEntries == null)
+				mEntries = read(getFile());
+		}
+
+		Map<String, Entry> entries = build();
+		Set<String> changed = new HashSet<>();
+		Map<String, Entry> previous;
+
+		synchronized (this) {
+			previous = mEntries;
+			mEntries = entries;
+		}
+
+		for (Entry entry : entries.values()) {
+			if (!entry.sameAs(previous.get(entry.mPackageName)))
+				changed.add(entry.mPackageName);
+		}
+		for (String packageName : previous.keySet()) {
+			if (!entries.containsKey(packageName))
+				changed.add(packageName);
+		}
+
+		if (!changed.isEmpty()) {
+			write(getFile(), entries);
+			Log.i(TAG, "verify: " + changed.size() + " packages changed");
+		}
+		return (changed);
+	}
+
+	/**
+	 * Index the launcher then leanback launcher activities, one per package as the package manager
+	 * picks the launch activity.
+	 */
+	private Map<String, Entry> build() {
+		PackageManager pm = mContext.getPackageManager();
+		Map<String, Long> versionCodes = Utils.getVersionCodes(pm);
+		Map<String, Entry> entries = new HashMap<>();
+		String[] categories = {Intent.CATEGORY_LAUNCHER, Intent.CATEGORY_LEANBACK_LAUNCHER};
+
+		for (String category : categories) {
+			Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+			mainIntent.addCategory(category);
+
+			for (ResolveInfo resolveInfo : pm.queryIntentActivities(mainIntent, 0)) {
+				String packageName = resolveInfo.activityInfo.packageName;
+				if (entries.containsKey(packageName) || mContext.getPackageName().equals(packageName))
+					continue;
+
+				Long versionCode = versionCodes.get(packageName);
+				long version = versionCode != null ? versionCode : 0;
+				int flags = 0;
+				if (Intent.CATEGORY_LEANBACK_LAUNCHER.equals(category))
+					flags |= FLAG_LEANBACK;
+				if ((resolveInfo.activityInfo.applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0)
+					flags |= FLAG_SYSTEM;
+
+				entries.put(packageName, new Entry(packageName, resolveInfo.activityInfo.name,
+						resolveInfo.activityInfo.getLabelResource(),
+						IconCache.getKey(packageName, version), version, flags));
+			}
+		}
+		return (entries);
+	}
+
+	private File getFile() {
+		return (new File(mContext.getFilesDir(), INDEX_FILE));
+	}
+
+	@VisibleForTesting
+	static Map<String, Entry> read(File file) {
+		Map<String, Entry> entries = new HashMap<>();
+		if (!file.exists())
+			return (entries);
+
+		try (RandomAccessFile in = new RandomAccessFile(file, "r");
+			 FileChannel channel = in.getChannel()) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				return (entries);
+
+			int count = buffer.getInt();
+			for (int i = 0; i < count; i++) {
+				Entry entry = new Entry(readString(buffer), readString(buffer), buffer.getInt(),
+						readString(buffer), buffer.getLong(), buffer.getInt());
+				entries.put(entry.mPackageName, entry);
+			}
+		} catch (IOException | BufferUnderflowException e) {
+			Log.e(TAG, "read", e);
+			entries.clear();
+		}
+		return (entries);
+	}
+
+	private static String readString(MappedByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return (new String(bytes, StandardCharsets.UTF_8));
+	}
+
+	@VisibleForTesting
+	static void write(File file, Map<String, Entry> entries) {
+		File temporary = new File(file.getPath() + ".tmp");
+		List<Entry> list = new ArrayList<>(entries.values());
+
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temporary))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(list.size());
+			for (Entry entry : list) {
+				writeString(out, entry.mPackageName);
+				writeString(out, entry.mActivity);
+				out.writeInt(entry.mLabelRes);
+				writeString(out, entry.mIconKey);
+				out.writeLong(entry.mVersionCode);
+				out.writeInt(entry.mFlags);
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "write", e);
+			return;
+		}
+		if (!temporary.renameTo(file))
+			Log.e(TAG, "write: unable to rename " + temporary);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+}
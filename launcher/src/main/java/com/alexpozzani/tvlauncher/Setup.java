@@ -23,6 +23,8 @@ import android.preference.PreferenceManager;
 
 import com.alexpozzani.tvlauncher.activities.Preferences;
 
+import java.util.Arrays;
+
 import static com.alexpozzani.tvlauncher.activities.Preferences.PREFERENCE_DEFAULT_TRANSPARENCY;
 import static com.alexpozzani.tvlauncher.activities.Preferences.PREFERENCE_TRANSPARENCY;
 
@@ -30,6 +32,8 @@ import static com.alexpozzani.tvlauncher.activities.Preferences.PREFERENCE_TRANS
 public class Setup {
 	private static final int DEFAULT_GRID_X = 5;
 	private static final int DEFAULT_GRID_Y = 3;
+	private static final int MIN_GRID_X = 2;
+	private static final int MIN_GRID_Y = 1;
 	private static final int DEFAULT_MARGIN_X = 5;
 	private static final int DEFAULT_MARGIN_Y = 5;
 
@@ -123,6 +127,85 @@ public class Setup {
 	}
 
 
+	public boolean flatTiles() {
+		try {
+			return (getPreferences().getBoolean(Preferences.PREFERENCE_FLAT_TILES, false));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return (false);
+	}
+
+	public boolean asyncInflation() {
+		try {
+			return (getPreferences().getBoolean(Preferences.PREFERENCE_ASYNC_INFLATION, false));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return (false);
+	}
+
+	public String getDeviceTier() {
+		try {
+			return (getPreferences().getString(Preferences.PREFERENCE_DEVICE_TIER, DeviceProfile.TIER_AUTO));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return (DeviceProfile.TIER_AUTO);
+	}
+
+	public boolean inPlacePicker() {
+		try {
+			return (getPreferences().getBoolean(Preferences.PREFERENCE_IN_PLACE_PICKER, true));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return (true);
+	}
+
+	/**
+	 * @return the key codes which open the slots, the first code the first slot
+	 */
+	public int[] getShortcutKeys() {
+		try {
+			String value = getPreferences().getString(Preferences.PREFERENCE_SHORTCUT_KEYS, "");
+			String[] codes = value.trim().split("[\\s,]+");
+			int[] keyCodes = new int[codes.length];
+			int count = 0;
+
+			for (String code : codes) {
+				try {
+					keyCodes[count] = Integer.parseInt(code);
+					count++;
+				} catch (NumberFormatException e) {
+					// ignore the invalid codes
+				}
+			}
+			return (Arrays.copyOf(keyCodes, count));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return (new int[0]);
+	}
+
+	public boolean frameMetrics() {
+		try {
+			return (getPreferences().getBoolean(Preferences.PREFERENCE_FRAME_METRICS, false));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return (false);
+	}
+
+	public boolean stallWatchdog() {
+		try {
+			return (getPreferences().getBoolean(Preferences.PREFERENCE_STALL_WATCHDOG, false));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return (false);
+	}
+
 	public int getGridX() {
 		return getInt(Preferences.PREFERENCE_GRID_X, DEFAULT_GRID_X);
 	}
@@ -131,6 +214,27 @@ public class Setup {
 		return getInt(Preferences.PREFERENCE_GRID_Y, DEFAULT_GRID_Y);
 	}
 
+	/**
+	 * @return number of columns of the home grid, the setting with a minimum of 2
+	 */
+	public int getGridColumns() {
+		return Math.max(MIN_GRID_X, getGridX());
+	}
+
+	/**
+	 * @return number of rows of the home grid, the setting with a minimum of 1
+	 */
+	public int getGridRows() {
+		return Math.max(MIN_GRID_Y, getGridY());
+	}
+
+	/**
+	 * @return number of slots of the home grid, the slots a writer may use
+	 */
+	public int getSlotCount() {
+		return (getGridColumns() * getGridRows());
+	}
+
 	public int getMarginX() {
 		return getInt(Preferences.PREFERENCE_MARGIN_X, DEFAULT_MARGIN_X);
 	}
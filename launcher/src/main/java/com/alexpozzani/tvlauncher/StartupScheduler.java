@@ -0,0 +1,160 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Startup tasks of a screen, run in three phases on the main thread.
+ * <p>
+ * {@link #PRE_FIRST_FRAME} tasks run in {@link #start(View)}, {@link #POST_FIRST_FRAME} tasks
+ * once the view was drawn for the first time and {@link #IDLE} tasks when the main looper is
+ * idle after that. A task runs after the tasks it depends on, which must be declared before it
+ * in the same or an earlier phase. The start time and duration of each task are kept for dumpsys.
+ */
+public class StartupScheduler {
+	public static final int PRE_FIRST_FRAME = 0;
+	public static final int POST_FIRST_FRAME = 1;
+	public static final int IDLE = 2;
+	private static final String[] PHASE_NAMES = {"pre first frame", "post first frame", "idle"};
+
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final Map<String, Task> mTasks = new LinkedHashMap<>();
+	private View mView;
+	private long mStart;
+	private long mFirstFrame = -1;
+	private boolean mCancelled = false;
+
+	private static class Task {
+		final String mName;
+		final int mPhase;
+		final Runnable mRunnable;
+		final String[] mDependencies;
+		long mStartTime = -1;
+		long mDuration = -1;
+
+		Task(String name, int phase, Runnable runnable, String[] dependencies) {
+			mName = name;
+			mPhase = phase;
+			mRunnable = runnable;
+			mDependencies = dependencies;
+		}
+	}
+
+	private final ViewTreeObserver.OnDrawListener mDrawListener = new ViewTreeObserver.OnDrawListener() {
+		@Override
+		public void onDraw() {
+			if (mFirstFrame >= 0)
+				return;
+			mFirstFrame = SystemClock.uptimeMillis() - mStart;
+			// the listener can not be removed while the frame is drawn
+			mHandler.postAtFrontOfQueue(() -> {
+				mView.getViewTreeObserver().removeOnDrawListener(mDrawListener);
+				if (mCancelled)
+					return;
+				runPhase(POST_FIRST_FRAME);
+				Looper.myQueue().addIdleHandler(mIdleHandler);
+			});
+		}
+	};
+
+	private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+		@Override
+		public boolean queueIdle() {
+			if (!mCancelled)
+				runPhase(IDLE);
+			return (false);
+		}
+	};
+
+	/**
+	 * @param dependencies names of the tasks which must run before this one
+	 * @throws IllegalArgumentException if a dependency is unknown or runs in a later phase
+	 */
+	public StartupScheduler add(String name, int phase, Runnable runnable, String... dependencies) {
+		for (String dependency : dependencies) {
+			Task task = mTasks.get(dependency);
+			if (task == null || task.mPhase > phase)
+				throw new IllegalArgumentException(name + " can not depend on " + dependency);
+		}
+		mTasks.put(name, new Task(name, phase, runnable, dependencies));
+		return (this);
+	}
+
+	/**
+	 * Run the pre first frame tasks, then wait for the first draw of the view.
+	 */
+	public void start(View view) {
+		mView = view;
+		mStart = SystemClock.uptimeMillis();
+		runPhase(PRE_FIRST_FRAME);
+		view.getViewTreeObserver().addOnDrawListener(mDrawListener);
+	}
+
+	/**
+	 * Drop the tasks not run yet, when the view is destroyed.
+	 */
+	public void cancel() {
+		mCancelled = true;
+		Looper.myQueue().removeIdleHandler(mIdleHandler);
+		if (mView != null && mFirstFrame < 0)
+			mView.getViewTreeObserver().removeOnDrawListener(mDrawListener);
+	}
+
+	/**
+	 * Dependencies are declared first, so the declaration order already satisfies them.
+	 */
+	private void runPhase(int phase) {
+		for (Task task : mTasks.values()) {
+			if (task.mPhase != phase)
+				continue;
+
+			task.mStartTime = SystemClock.uptimeMillis();
+			task.mRunnable.run();
+			task.mDuration = SystemClock.uptimeMillis() - task.mStartTime;
+			task.mStartTime -= mStart;
+		}
+	}
+
+	public void dump(String prefix, PrintWriter writer) {
+		writer.print(prefix);
+		writer.println("Startup: first frame " + (mFirstFrame >= 0 ? "at " + mFirstFrame + "ms" : "not drawn"));
+
+		for (Task task : mTasks.values()) {
+			writer.print(prefix);
+			writer.print("  " + task.mName + " (" + PHASE_NAMES[task.mPhase] + "): ");
+			if (task.mStartTime < 0)
+				writer.print("not run");
+			else
+				writer.print("at " + task.mStartTime + "ms, " + task.mDuration + "ms");
+			if (task.mDependencies.length > 0)
+				writer.print(", after " + TextUtils.join(", ", task.mDependencies));
+			writer.println();
+		}
+	}
+}
@@ -19,29 +19,86 @@ package com.alexpozzani.tvlauncher;
 
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
+import android.support.v4.content.pm.PackageInfoCompat;
 import android.util.TypedValue;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
 
 public class Utils {
-	public static List<AppInfo> loadApplications(Context context) {
-		PackageManager packageManager = context.getPackageManager();
-		
+	private static List<ResolveInfo> queryLauncherActivities(PackageManager packageManager, String packageName) {
 		Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
 		mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+		mainIntent.setPackage(packageName);
 		List<ResolveInfo> intentActivities = packageManager.queryIntentActivities(mainIntent, 0);
 		
 		mainIntent = new Intent(Intent.ACTION_MAIN, null);
 		mainIntent.addCategory(Intent.CATEGORY_LEANBACK_LAUNCHER);
+		mainIntent.setPackage(packageName);
 		intentActivities.addAll(packageManager.queryIntentActivities(mainIntent, 0));
+		return intentActivities;
+	}
+
+	/**
+	 * Packages having a launcher or leanback launcher activity, without loading any resource.
+	 */
+	public static Set<String> getLaunchablePackages(Context context) {
+		Set<String> packages = new HashSet<>();
+
+		for (ResolveInfo resolveInfo : queryLauncherActivities(context.getPackageManager(), null)) {
+			packages.add(resolveInfo.activityInfo.packageName);
+		}
+		return packages;
+	}
+
+	/**
+	 * Version codes of all the installed packages, read in a single package manager call.
+	 */
+	public static Map<String, Long> getVersionCodes(PackageManager packageManager) {
+		Map<String, Long> versionCodes = new HashMap<>();
+
+		for (PackageInfo packageInfo : packageManager.getInstalledPackages(0)) {
+			versionCodes.put(packageInfo.packageName, PackageInfoCompat.getLongVersionCode(packageInfo));
+		}
+		return versionCodes;
+	}
+
+	/**
+	 * Launchable applications other than this one, unsorted, one per package.
+	 * Only handles are built, labels and icons are not loaded.
+	 */
+	public static List<AppInfo> queryApplications(Context context) {
+		return queryApplications(context, null);
+	}
+
+	/**
+	 * Same as {@link #queryApplications(Context)}, restricted to a package when not null.
+	 */
+	public static List<AppInfo> queryApplications(Context context, String packageName) {
+		PackageManager packageManager = context.getPackageManager();
+		List<ResolveInfo> intentActivities = queryLauncherActivities(packageManager, packageName);
+		Map<String, Long> versionCodes;
+
+		if (packageName == null) {
+			versionCodes = getVersionCodes(packageManager);
+		} else {
+			versionCodes = new HashMap<>();
+			try {
+				versionCodes.put(packageName, PackageInfoCompat.getLongVersionCode(packageManager.getPackageInfo(packageName, 0)));
+			} catch (PackageManager.NameNotFoundException e) {
+				return new ArrayList<>();
+			}
+		}
 				
 		Set<String> knownPackages = new HashSet<>();
 		List<AppInfo> entries = new ArrayList<>();
@@ -49,18 +106,30 @@ public class Utils {
 		for (ResolveInfo resolveInfo : intentActivities) {
 			if (!context.getPackageName().equals(resolveInfo.activityInfo.packageName) &&
 					!knownPackages.contains(resolveInfo.activityInfo.packageName)) {
-				entries.add(new AppInfo(packageManager, resolveInfo));
+				Long versionCode = versionCodes.get(resolveInfo.activityInfo.packageName);
+				entries.add(new AppInfo(context, packageManager, resolveInfo, versionCode != null ? versionCode : 0));
 				knownPackages.add(resolveInfo.activityInfo.packageName);
 			}
 		}
+		return entries;
+	}
+
+	/**
+	 * Launchable applications sorted by label, labels are loaded but not icons.
+	 */
+	public static List<AppInfo> loadApplications(Context context) {
+		List<AppInfo> entries = queryApplications(context);
+		sortApplications(entries);
+		return entries;
+	}
 
+	public static void sortApplications(List<AppInfo> entries) {
 		Collections.sort(entries, new Comparator<AppInfo>() {
 			@Override
 			public int compare(AppInfo lhs, AppInfo rhs) {
 				return lhs.getName().compareToIgnoreCase(rhs.getName());
 			}
 		});
-		return entries;
 	}
 
 	public static int getPixelFromDp(Context context, int dp) {
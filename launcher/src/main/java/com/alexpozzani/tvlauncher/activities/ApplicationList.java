@@ -19,16 +19,24 @@ package com.alexpozzani.tvlauncher.activities;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.view.KeyEvent;
 import android.view.View;
 import android.widget.AbsListView;
 import android.widget.AdapterView;
+import android.widget.Toast;
 
 import com.alexpozzani.tvlauncher.R;
 import com.alexpozzani.tvlauncher.AppInfo;
+import com.alexpozzani.tvlauncher.AppCatalogue;
+import com.alexpozzani.tvlauncher.Setup;
+import com.alexpozzani.tvlauncher.debug.FrameMetricsCollector;
 import com.alexpozzani.tvlauncher.views.ApplicationAdapter;
-import com.alexpozzani.tvlauncher.Utils;
+import com.alexpozzani.tvlauncher.views.NavigationController;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.List;
 
 
 public class ApplicationList extends Activity implements AdapterView.OnItemClickListener, View.OnClickListener {
@@ -37,26 +45,21 @@ public class ApplicationList extends Activity implements AdapterView.OnItemClick
 	public static final String VIEW_TYPE = "view_type";
 	public static final String DELETE = "delete";
 	public static final String SHOW_DELETE = "show_delete";
+	public static final String ADD_TO_FOLDER = "add_to_folder";
 	//
 	public static final int VIEW_GRID = 0;
 	public static final int VIEW_LIST = 1;
 	//
 	private int mApplication = -1;
 	private int mViewType = 0;
+	private boolean mAddToFolder = false;
 	private AbsListView mListView;
-	private final AsyncTask<Void, Void, AppInfo[]> mApplicationLoader = new AsyncTask<Void, Void, AppInfo[]>() {
+	private FrameMetricsCollector mFrameMetrics;
+	private NavigationController mNavigation;
+	private final AppCatalogue.Listener mCatalogueListener = new AppCatalogue.Listener() {
 		@Override
-		protected AppInfo[] doInBackground(Void... params) {
-			return Utils.loadApplications(ApplicationList.this).toArray(new AppInfo[0]);
-		}
-
-		@Override
-		protected void onPostExecute(AppInfo[] apps) {
-			getListView().setOnItemClickListener(ApplicationList.this);
-			getListView().setAdapter(
-					new ApplicationAdapter(ApplicationList.this,
-							mViewType == VIEW_LIST ? R.layout.list_item : R.layout.grid_item,
-							apps));
+		public void onCatalogueChanged(List<AppInfo> applications) {
+			bindApplications(applications);
 		}
 	};
 
@@ -77,9 +80,28 @@ public class ApplicationList extends Activity implements AdapterView.OnItemClick
 		setContentView(mViewType == VIEW_LIST ?
 				R.layout.listview :
 				R.layout.gridview);
+		mNavigation = new NavigationController(getWindow().getDecorView());
 
 		mListView = (AbsListView) findViewById(R.id.list);
-		mApplicationLoader.execute();
+		mListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+			@Override
+			public void onScrollStateChanged(AbsListView view, int scrollState) {
+				if (mFrameMetrics != null && scrollState != SCROLL_STATE_IDLE)
+					mFrameMetrics.setInteraction(FrameMetricsCollector.INTERACTION_LIST_SCROLL);
+			}
+
+			@Override
+			public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+			}
+		});
+		// bound synchronously once the catalogue is loaded, and again when packages change
+		AppCatalogue catalogue = AppCatalogue.getInstance(this);
+		getListView().setOnItemClickListener(this);
+		catalogue.addListener(mCatalogueListener);
+		if (catalogue.getApplications() != null)
+			bindApplications(catalogue.getApplications());
+		else
+			catalogue.load();
 
 		View v;
 		if ((args != null) && (args.containsKey(SHOW_DELETE))) {
@@ -90,10 +112,73 @@ public class ApplicationList extends Activity implements AdapterView.OnItemClick
 		}
 		if ((v = findViewById(R.id.delete)) != null)
 			v.setOnClickListener(this);
+		if ((v = findViewById(R.id.folder)) != null)
+			v.setOnClickListener(this);
 		if ((v = findViewById(R.id.cancel)) != null)
 			v.setOnClickListener(this);
 	}
 
+	@Override
+	protected void onDestroy() {
+		AppCatalogue.getInstance(this).removeListener(mCatalogueListener);
+		super.onDestroy();
+	}
+
+	/**
+	 * The adapter is created once, a catalogue change updates its items in place.
+	 */
+	private void bindApplications(List<AppInfo> applications) {
+		ApplicationAdapter adapter = (ApplicationAdapter) getListView().getAdapter();
+
+		if (adapter != null)
+			adapter.update(getListView(), applications);
+		else
+			getListView().setAdapter(
+					new ApplicationAdapter(this,
+							mViewType == VIEW_LIST ? R.layout.list_item : R.layout.grid_item,
+							applications));
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+		if (new Setup(this).frameMetrics()) {
+			mFrameMetrics = FrameMetricsCollector.getInstance(this);
+			mFrameMetrics.attach(getWindow());
+		}
+	}
+
+	@Override
+	protected void onPause() {
+		mNavigation.cancel();
+		if (mFrameMetrics != null) {
+			mFrameMetrics.detach(getWindow());
+			mFrameMetrics.save();
+			mFrameMetrics = null;
+		}
+		super.onPause();
+	}
+
+	@Override
+	public boolean dispatchKeyEvent(KeyEvent event) {
+		if (mFrameMetrics != null && event.getAction() == KeyEvent.ACTION_DOWN)
+			mFrameMetrics.setInteraction(FrameMetricsCollector.INTERACTION_LIST_SCROLL);
+		if (mNavigation.dispatchKeyEvent(event))
+			return (true);
+		return super.dispatchKeyEvent(event);
+	}
+
+	@Override
+	public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+		super.dump(prefix, fd, writer, args);
+
+		FrameMetricsCollector frameMetrics = FrameMetricsCollector.peekInstance();
+		if (frameMetrics != null)
+			frameMetrics.dump(prefix, writer);
+		if (mNavigation != null)
+			mNavigation.dump(prefix, writer);
+	}
+
 	private AbsListView getListView() {
 		return mListView;
 	}
@@ -105,6 +190,7 @@ public class ApplicationList extends Activity implements AdapterView.OnItemClick
 
 		data.putExtra(PACKAGE_NAME, appInfo.getPackageName());
 		data.putExtra(APPLICATION_NUMBER, mApplication);
+		data.putExtra(ADD_TO_FOLDER, mAddToFolder);
 
 		if (getParent() == null) {
 			setResult(Activity.RESULT_OK, data);
@@ -130,6 +216,13 @@ public class ApplicationList extends Activity implements AdapterView.OnItemClick
 				finish();
 				break;
 
+			case R.id.folder:
+				mAddToFolder = !mAddToFolder;
+				v.setSelected(mAddToFolder);
+				if (mAddToFolder)
+					Toast.makeText(this, R.string.folder_select, Toast.LENGTH_SHORT).show();
+				break;
+
 			case R.id.cancel:
 				if (getParent() == null)
 					setResult(Activity.RESULT_CANCELED);
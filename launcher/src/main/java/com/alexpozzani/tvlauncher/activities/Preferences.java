@@ -18,6 +18,7 @@
 package com.alexpozzani.tvlauncher.activities;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
@@ -28,10 +29,15 @@ import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.widget.Toast;
 
+import com.alexpozzani.tvlauncher.LayoutBackup;
 import com.alexpozzani.tvlauncher.R;
 import com.alexpozzani.tvlauncher.Setup;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 @SuppressWarnings("deprecation")
 public class Preferences extends PreferenceActivity {
@@ -46,8 +52,23 @@ public class Preferences extends PreferenceActivity {
 	public static final String PREFERENCE_MARGIN_X = "preference_margin_x";
 	public static final String PREFERENCE_MARGIN_Y = "preference_margin_y";
 	public static final String PREFERENCE_LOCKED = "preference_locked";
+	public static final String PREFERENCE_FLAT_TILES = "preference_flat_tiles";
+	public static final String PREFERENCE_ASYNC_INFLATION = "preference_async_inflation";
+	public static final String PREFERENCE_DEVICE_TIER = "preference_device_tier";
+	public static final String PREFERENCE_SHORTCUT_KEYS = "preference_shortcut_keys";
+	public static final String PREFERENCE_IN_PLACE_PICKER = "preference_in_place_picker";
 	private static final String PREFERENCE_ABOUT = "preference_about";
 	public static final String PREFERENCE_FIRST_LAUNCH = "preference_first_launch";
+	public static final String PREFERENCE_FRAME_METRICS = "preference_frame_metrics";
+	public static final String PREFERENCE_STALL_WATCHDOG = "preference_stall_watchdog";
+	private static final String PREFERENCE_EXPORT_LAYOUT = "preference_export_layout";
+	private static final String PREFERENCE_IMPORT_LAYOUT = "preference_import_layout";
+	public static final String LAYOUT_IMPORTED = "layout_imported";
+
+	// layout export and import, file and preference writes stay off the main thread
+	private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+	// back waits for a running import, so its result reaches the home screen
+	private boolean mImporting = false;
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
@@ -70,6 +91,21 @@ public class Preferences extends PreferenceActivity {
 			}
 		});
 
+		findPreference(PREFERENCE_EXPORT_LAYOUT).setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+			@Override
+			public boolean onPreferenceClick(Preference preference) {
+				exportLayout();
+				return (true);
+			}
+		});
+		findPreference(PREFERENCE_IMPORT_LAYOUT).setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+			@Override
+			public boolean onPreferenceClick(Preference preference) {
+				importLayout();
+				return (true);
+			}
+		});
+
 		PackageInfo pInfo;
 		String version = "#Err";
 		try {
@@ -96,6 +132,75 @@ public class Preferences extends PreferenceActivity {
 		});
 	}
 
+	private void exportLayout() {
+		final Context context = getApplicationContext();
+
+		setLayoutBackupEnabled(false);
+		sExecutor.execute(() -> {
+			String message;
+			try {
+				File file = LayoutBackup.exportLayout(context);
+				message = context.getString(R.string.layout_exported, file.getPath());
+			} catch (IOException e) {
+				e.printStackTrace();
+				message = context.getString(R.string.layout_error, e.getMessage());
+			}
+
+			final String text = message;
+			runOnUiThread(() -> {
+				Toast.makeText(context, text, Toast.LENGTH_LONG).show();
+				setLayoutBackupEnabled(true);
+			});
+		});
+	}
+
+	private void importLayout() {
+		final Context context = getApplicationContext();
+
+		mImporting = true;
+		setLayoutBackupEnabled(false);
+		sExecutor.execute(() -> {
+			try {
+				final int dropped = LayoutBackup.importLayout(context);
+				runOnUiThread(() -> {
+					Toast.makeText(context, context.getString(R.string.layout_imported, dropped), Toast.LENGTH_LONG).show();
+					onLayoutImported();
+				});
+			} catch (IOException | LayoutBackup.InvalidLayoutException e) {
+				e.printStackTrace();
+				final String text = context.getString(R.string.layout_error, e.getMessage());
+				runOnUiThread(() -> {
+					Toast.makeText(context, text, Toast.LENGTH_LONG).show();
+					mImporting = false;
+					setLayoutBackupEnabled(true);
+				});
+			}
+		});
+	}
+
+	/**
+	 * The home screen reloads the new layout in place.
+	 */
+	private void onLayoutImported() {
+		mImporting = false;
+		if (isFinishing())
+			return;
+
+		Intent data = new Intent();
+		data.putExtra(LAYOUT_IMPORTED, true);
+		if (getParent() == null) {
+			setResult(Activity.RESULT_OK, data);
+		} else {
+			getParent().setResult(Activity.RESULT_OK, data);
+		}
+		finish();
+	}
+
+	private void setLayoutBackupEnabled(boolean enabled) {
+		findPreference(PREFERENCE_EXPORT_LAYOUT).setEnabled(enabled);
+		findPreference(PREFERENCE_IMPORT_LAYOUT).setEnabled(enabled);
+	}
+
 	private void bindSummary(String key, final int resId) {
 		final ListPreference p = (ListPreference) findPreference(key);
 		setPreferenceSummaryValue(p, resId, p.getValue());
@@ -114,6 +219,12 @@ public class Preferences extends PreferenceActivity {
 		);
 	}
 
+	@Override
+	public void onBackPressed() {
+		if (!mImporting)
+			super.onBackPressed();
+	}
+
 	@Override
 	public void onDestroy() {
 		if (getParent() == null) {
@@ -0,0 +1,267 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher.debug;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Optional collector of frame durations for the launcher windows.
+ * <p>
+ * Frames are bucketed by phase (input, layout, draw and total) and by the interaction in
+ * progress when they were drawn. Totals are persisted across runs and printed with
+ * {@code adb shell dumpsys activity <package>}, add {@code --reset-metrics} to clear them.
+ */
+public class FrameMetricsCollector {
+	private static final String TAG = "FrameMetrics";
+	private static final String FILE_NAME = "frame_metrics.json";
+	public static final String ARG_RESET = "--reset-metrics";
+
+	public static final int INTERACTION_OTHER = 0;
+	public static final int INTERACTION_GRID_FOCUS = 1;
+	public static final int INTERACTION_LIST_SCROLL = 2;
+	private static final String[] INTERACTIONS = {"other", "grid_focus", "list_scroll"};
+
+	private static final int[] PHASE_METRICS = {
+			FrameMetrics.INPUT_HANDLING_DURATION,
+			FrameMetrics.LAYOUT_MEASURE_DURATION,
+			FrameMetrics.DRAW_DURATION,
+			FrameMetrics.TOTAL_DURATION
+	};
+	private static final String[] PHASES = {"input", "layout", "draw", "total"};
+	private static final int PHASE_TOTAL = 3;
+
+	// upper bounds of the histogram buckets in milliseconds, the last bucket holds everything above
+	private static final int[] BUCKETS = {2, 4, 8, 12, 16, 24, 32, 50, 100};
+	private static final long INTERACTION_TIMEOUT_MS = 500;
+
+	private static FrameMetricsCollector sInstance;
+
+	private final File mFile;
+	private final long[][][] mHistograms = new long[INTERACTIONS.length][PHASES.length][BUCKETS.length + 1];
+	private final long[] mFrames = new long[INTERACTIONS.length];
+	private final long[] mJankyFrames = new long[INTERACTIONS.length];
+	private final Map<Window, Window.OnFrameMetricsAvailableListener> mListeners = new WeakHashMap<>();
+	private final Handler mHandler;
+	private volatile int mInteraction = INTERACTION_OTHER;
+	private volatile long mInteractionTime;
+
+	private FrameMetricsCollector(Context context) {
+		mFile = new File(context.getFilesDir(), FILE_NAME);
+		HandlerThread thread = new HandlerThread(TAG);
+		thread.start();
+		mHandler = new Handler(thread.getLooper());
+		load();
+	}
+
+	public static synchronized FrameMetricsCollector getInstance(Context context) {
+		if (sInstance == null)
+			sInstance = new FrameMetricsCollector(context.getApplicationContext());
+		return (sInstance);
+	}
+
+	/**
+	 * @return the collector, or null when the collector has never been enabled in this process
+	 */
+	public static synchronized FrameMetricsCollector peekInstance() {
+		return (sInstance);
+	}
+
+	public synchronized void attach(Window window) {
+		if (mListeners.containsKey(window))
+			return;
+
+		float refreshRate = window.getWindowManager().getDefaultDisplay().getRefreshRate();
+		final long frameIntervalNanos = (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60));
+		Window.OnFrameMetricsAvailableListener listener = new Window.OnFrameMetricsAvailableListener() {
+			@Override
+			public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+				if (frameMetrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1)
+					return;
+				record(frameMetrics, frameIntervalNanos);
+			}
+		};
+		window.addOnFrameMetricsAvailableListener(listener, mHandler);
+		mListeners.put(window, listener);
+	}
+
+	public synchronized void detach(Window window) {
+		Window.OnFrameMetricsAvailableListener listener = mListeners.remove(window);
+		if (listener != null) {
+			try {
+				window.removeOnFrameMetricsAvailableListener(listener);
+			} catch (IllegalArgumentException e) {
+				Log.w(TAG, "detach: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Mark the interaction in progress, frames drawn in the next {@value #INTERACTION_TIMEOUT_MS}ms are counted for it.
+	 */
+	public void setInteraction(int interaction) {
+		mInteraction = interaction;
+		mInteractionTime = SystemClock.uptimeMillis();
+	}
+
+	private synchronized void record(FrameMetrics frameMetrics, long frameIntervalNanos) {
+		int interaction = mInteraction;
+		if (SystemClock.uptimeMillis() - mInteractionTime > INTERACTION_TIMEOUT_MS)
+			interaction = INTERACTION_OTHER;
+
+		for (int phase = 0; phase < PHASES.length; phase++) {
+			long duration = frameMetrics.getMetric(PHASE_METRICS[phase]);
+			mHistograms[interaction][phase][getBucket(duration / 1000000L)]++;
+
+			if (phase == PHASE_TOTAL && duration > frameIntervalNanos)
+				mJankyFrames[interaction]++;
+		}
+		mFrames[interaction]++;
+	}
+
+	private static int getBucket(long durationMs) {
+		for (int i = 0; i < BUCKETS.length; i++) {
+			if (durationMs < BUCKETS[i])
+				return (i);
+		}
+		return (BUCKETS.length);
+	}
+
+	public synchronized void reset() {
+		for (int interaction = 0; interaction < INTERACTIONS.length; interaction++) {
+			for (int phase = 0; phase < PHASES.length; phase++) {
+				for (int bucket = 0; bucket <= BUCKETS.length; bucket++) {
+					mHistograms[interaction][phase][bucket] = 0;
+				}
+			}
+			mFrames[interaction] = 0;
+			mJankyFrames[interaction] = 0;
+		}
+		save();
+	}
+
+	public synchronized void dump(String prefix, PrintWriter writer) {
+		writer.print(prefix);
+		writer.println("Frame metrics (ms buckets < " + join(BUCKETS) + " and above):");
+		for (int interaction = 0; interaction < INTERACTIONS.length; interaction++) {
+			writer.print(prefix);
+			writer.println("  " + INTERACTIONS[interaction] + ": frames=" + mFrames[interaction] + " janky=" + mJankyFrames[interaction]);
+			for (int phase = 0; phase < PHASES.length; phase++) {
+				writer.print(prefix);
+				writer.println("    " + PHASES[phase] + ": " + join(mHistograms[interaction][phase]));
+			}
+		}
+	}
+
+	private static String join(int[] values) {
+		StringBuilder sb = new StringBuilder();
+		for (int value : values) {
+			if (sb.length() > 0)
+				sb.append(' ');
+			sb.append(value);
+		}
+		return (sb.toString());
+	}
+
+	private static String join(long[] values) {
+		StringBuilder sb = new StringBuilder();
+		for (long value : values) {
+			if (sb.length() > 0)
+				sb.append(' ');
+			sb.append(value);
+		}
+		return (sb.toString());
+	}
+
+	public synchronized void save() {
+		try {
+			JSONObject json = new JSONObject();
+			for (int interaction = 0; interaction < INTERACTIONS.length; interaction++) {
+				JSONObject entry = new JSONObject();
+				entry.put("frames", mFrames[interaction]);
+				entry.put("janky", mJankyFrames[interaction]);
+				for (int phase = 0; phase < PHASES.length; phase++) {
+					JSONArray histogram = new JSONArray();
+					for (long count : mHistograms[interaction][phase]) {
+						histogram.put(count);
+					}
+					entry.put(PHASES[phase], histogram);
+				}
+				json.put(INTERACTIONS[interaction], entry);
+			}
+
+			try (OutputStream out = new FileOutputStream(mFile)) {
+				out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		} catch (IOException | JSONException e) {
+			Log.e(TAG, "save", e);
+		}
+	}
+
+	private void load() {
+		if (!mFile.exists())
+			return;
+
+		try (InputStream in = new FileInputStream(mFile)) {
+			byte[] content = new byte[(int) mFile.length()];
+			int offset = 0;
+			int count;
+			while (offset < content.length && (count = in.read(content, offset, content.length - offset)) > 0) {
+				offset += count;
+			}
+
+			JSONObject json = new JSONObject(new String(content, StandardCharsets.UTF_8));
+			for (int interaction = 0; interaction < INTERACTIONS.length; interaction++) {
+				JSONObject entry = json.optJSONObject(INTERACTIONS[interaction]);
+				if (entry == null)
+					continue;
+
+				mFrames[interaction] = entry.optLong("frames");
+				mJankyFrames[interaction] = entry.optLong("janky");
+				for (int phase = 0; phase < PHASES.length; phase++) {
+					JSONArray histogram = entry.optJSONArray(PHASES[phase]);
+					for (int bucket = 0; histogram != null && bucket < histogram.length() && bucket <= BUCKETS.length; bucket++) {
+						mHistograms[interaction][phase][bucket] = histogram.optLong(bucket);
+					}
+				}
+			}
+		} catch (IOException | JSONException e) {
+			Log.e(TAG, "load", e);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher.debug;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Printer;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+
+/**
+ * Debug watchdog of the main looper.
+ * <p>
+ * Every dispatched message is timed through the looper message logging. When a message is still
+ * running after {@link #THRESHOLD_MS}, the main thread stack is sampled from a background thread.
+ * The last {@link #MAX_REPORTS} stalls are kept with their duration and top stack frames,
+ * they are printed by dumpsys activity.
+ */
+public class StallWatchdog implements Printer {
+	private static final String TAG = "StallWatchdog";
+	private static final long THRESHOLD_MS = 150;
+	private static final int MAX_REPORTS = 16;
+	private static final int MAX_FRAMES = 12;
+
+	private static StallWatchdog sInstance;
+
+	private final Looper mLooper = Looper.getMainLooper();
+	private final Handler mHandler;
+	private final ArrayDeque<Report> mReports = new ArrayDeque<>();
+	private final Runnable mSample = new Runnable() {
+		@Override
+		public void run() {
+			sample();
+		}
+	};
+
+	private volatile long mMessageStart;
+	private volatile String mMessage;
+	private volatile StackTraceElement[] mStack;
+	private long mMessageCount;
+	private long mStallCount;
+
+	private static class Report {
+		final long mUptime;
+		final long mDuration;
+		final String mMessage;
+		final StackTraceElement[] mStack;
+
+		Report(long uptime, long duration, String message, StackTraceElement[] stack) {
+			mUptime = uptime;
+			mDuration = duration;
+			mMessage = message;
+			mStack = stack;
+		}
+	}
+
+	private StallWatchdog() {
+		HandlerThread thread = new HandlerThread(TAG);
+		thread.start();
+		mHandler = new Handler(thread.getLooper());
+	}
+
+	public static synchronized void start() {
+		if (sInstance == null) {
+			sInstance = new StallWatchdog();
+			sInstance.mLooper.setMessageLogging(sInstance);
+		}
+	}
+
+	public static synchronized void stop() {
+		if (sInstance != null) {
+			sInstance.mLooper.setMessageLogging(null);
+			sInstance.mHandler.getLooper().quit();
+			sInstance = null;
+		}
+	}
+
+	public static synchronized StallWatchdog getInstance() {
+		return (sInstance);
+	}
+
+	/**
+	 * Called by the main looper before (">>>>> Dispatching") and after ("<<<<< Finished") each message.
+	 */
+	@Override
+	public void println(String x) {
+		if (x.startsWith(">")) {
+			mStack = null;
+			mMessage = x;
+			mMessageStart = SystemClock.uptimeMillis();
+			mHandler.postDelayed(mSample, THRESHOLD_MS);
+		} else if (x.startsWith("<")) {
+			mHandler.removeCallbacks(mSample);
+			long duration = SystemClock.uptimeMillis() - mMessageStart;
+			StackTraceElement[] stack = mStack;
+
+			synchronized (this) {
+				mMessageCount++;
+				if (duration >= THRESHOLD_MS) {
+					mStallCount++;
+					if (mReports.size() >= MAX_REPORTS)
+						mReports.removeFirst();
+					mReports.addLast(new Report(mMessageStart, duration, mMessage, stack));
+					Log.w(TAG, "stall " + duration + "ms : " + mMessage);
+				}
+			}
+		}
+	}
+
+	private void sample() {
+		StackTraceElement[] stack = mLooper.getThread().getStackTrace();
+		int count = Math.min(stack.length, MAX_FRAMES);
+		StackTraceElement[] top = new StackTraceElement[count];
+
+		System.arraycopy(stack, 0, top, 0, count);
+		mStack = top;
+	}
+
+	public synchronized void dump(String prefix, PrintWriter writer) {
+		writer.print(prefix);
+		writer.println("Main thread stalls (threshold " + THRESHOLD_MS + "ms): " + mStallCount + " of " + mMessageCount + " messages");
+		for (Report report : mReports) {
+			writer.print(prefix);
+			writer.println("  at " + report.mUptime + "ms, " + report.mDuration + "ms : " + report.mMessage);
+			if (report.mStack != null) {
+				for (StackTraceElement frame : report.mStack) {
+					writer.print(prefix);
+					writer.println("      " + frame);
+				}
+			}
+		}
+	}
+}
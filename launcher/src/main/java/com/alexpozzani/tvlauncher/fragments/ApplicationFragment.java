@@ -18,49 +18,76 @@
 package com.alexpozzani.tvlauncher.fragments;
 
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
 import android.os.BatteryManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.Looper;
+import android.preference.PreferenceManager;
 import android.support.v4.app.Fragment;
-import android.text.TextUtils;
+import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 import android.view.Gravity;
+import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.GridView;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.alexpozzani.tvlauncher.R;
+import com.alexpozzani.tvlauncher.AppCatalogue;
 import com.alexpozzani.tvlauncher.AppInfo;
+import com.alexpozzani.tvlauncher.CacheMaintenance;
+import com.alexpozzani.tvlauncher.DeviceProfile;
+import com.alexpozzani.tvlauncher.DirectLaunch;
+import com.alexpozzani.tvlauncher.Folder;
+import com.alexpozzani.tvlauncher.GridModel;
+import com.alexpozzani.tvlauncher.IconCache;
+import com.alexpozzani.tvlauncher.IdleMonitor;
+import com.alexpozzani.tvlauncher.LabelCache;
+import com.alexpozzani.tvlauncher.LayoutProvider;
 import com.alexpozzani.tvlauncher.Setup;
+import com.alexpozzani.tvlauncher.StartupScheduler;
 import com.alexpozzani.tvlauncher.Utils;
 import com.alexpozzani.tvlauncher.activities.ApplicationList;
+import com.alexpozzani.tvlauncher.views.ApplicationAdapter;
+import com.alexpozzani.tvlauncher.views.ApplicationGrid;
+import com.alexpozzani.tvlauncher.views.ApplicationPicker;
 import com.alexpozzani.tvlauncher.views.ApplicationView;
+import com.alexpozzani.tvlauncher.views.FolderPreview;
+import com.alexpozzani.tvlauncher.views.GridBinder;
+import com.alexpozzani.tvlauncher.views.GridSnapshot;
+import com.alexpozzani.tvlauncher.views.LabelPrecomputer;
+import com.alexpozzani.tvlauncher.views.TileBackgrounds;
 import com.alexpozzani.tvlauncher.activities.Preferences;
 
+import org.json.JSONObject;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 @SuppressWarnings("PointlessBooleanExpression")
 public class ApplicationFragment extends Fragment implements View.OnClickListener, View.OnLongClickListener {
 	public static final String TAG = "ApplicationFragment";
-	private static final String PREFERENCES_NAME = "applications";
+	public static final String PREFERENCES_NAME = "applications";
 	private static final int REQUEST_CODE_APPLICATION_LIST = 0x1E;
 	private static final int REQUEST_CODE_WALLPAPER = 0x1F;
 	private static final int REQUEST_CODE_APPLICATION_START = 0x20;
@@ -79,6 +106,7 @@ public class ApplicationFragment extends Fragment implements View.OnClickListene
 	private TextView mDate;
 	private DateFormat mTimeFormat;
 	private DateFormat mDateFormat;
+	private LinearLayout mBatteryLayout;
 	private TextView mBatteryLevel;
 	private ImageView mBatteryIcon;
 	private BroadcastReceiver mBatteryChangedReceiver = new BroadcastReceiver(){
@@ -93,6 +121,41 @@ public class ApplicationFragment extends Fragment implements View.OnClickListene
 		}
 	};
 	private boolean mBatteryChangedReceiverRegistered = false;
+	private boolean mBatteryReady = false;
+	private final BroadcastReceiver mSlotsChangedReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			// the model already dropped or resolved the changed slots : provider, index check,
+			// package events and packages resolved in background
+			updateApplications(intent.getIntArrayExtra(LayoutProvider.EXTRA_POSITIONS));
+		}
+	};
+	private final BroadcastReceiver mLabelsChangedReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			// slot handles keep the previous label
+			mModel.invalidate();
+			updateApplications();
+		}
+	};
+
+	// set when a setting which can not be applied in place changed, the activity restarts on return
+	private boolean mRestartRequired = false;
+	private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceChangeListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+		@Override
+		public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+			if (Preferences.PREFERENCE_TRANSPARENCY.equals(key) || Preferences.PREFERENCE_DEFAULT_TRANSPARENCY.equals(key)) {
+				refreshBackgrounds();
+			} else if (Preferences.PREFERENCE_DEVICE_TIER.equals(key)) {
+				// the profile is only picked again here, the restart applies it to the views
+				if (DeviceProfile.reload(getContext()))
+					IconCache.getInstance(getContext()).reloadProfile();
+				mRestartRequired = true;
+			} else if (!Preferences.PREFERENCE_FIRST_LAUNCH.equals(key)) {
+				mRestartRequired = true;
+			}
+		}
+	};
 
 	private final Handler mHandler = new Handler();
 	private final Runnable mTimerTick = new Runnable() {
@@ -102,13 +165,84 @@ public class ApplicationFragment extends Fragment implements View.OnClickListene
 		}
 	};
 
+	private final DirectLaunch mDirectLaunch = new DirectLaunch(new DirectLaunch.Listener() {
+		@Override
+		public void onSlotSelected(int position) {
+			launchSlot(position);
+		}
+	});
+
+	private ApplicationPicker mPicker;
+	private int mPickerRequestCode;
+	private final ApplicationPicker.Listener mPickerListener = new ApplicationPicker.Listener() {
+		@Override
+		public void onApplicationPicked(int position, String packageName, boolean addToFolder) {
+			if (mPickerRequestCode == REQUEST_CODE_APPLICATION_START) {
+				openApplication(packageName);
+				return;
+			}
+			if (addToFolder)
+				addToFolder(position, packageName);
+			else
+				writePreferences(position, packageName);
+			updateApplications(new int[]{position});
+		}
+
+		@Override
+		public void onDeletePicked(int position) {
+			writePreferences(position, null);
+			updateApplications(new int[]{position});
+		}
+	};
+
+	private IdleMonitor mIdleMonitor;
+	private final IdleMonitor.Listener mIdleListener = new IdleMonitor.Listener() {
+		@Override
+		public void onIdle() {
+			Log.i(TAG, "idle");
+			setClock();
+			updateBatteryReceiver();
+
+			// tiles keep their own drawables, only what is not shown is dropped
+			IconCache.getInstance(getContext()).trimMemory();
+			AppCatalogue.getInstance(getContext()).trimMemory();
+			FolderPreview.trimMemory();
+			LabelPrecomputer.trimMemory();
+		}
+
+		@Override
+		public void onWake() {
+			Log.i(TAG, "wake");
+			setClock();
+			updateBatteryReceiver();
+		}
+	};
+
 	private int mGridX = 5;
 	private int mGridY = 3;
-	private LinearLayout mContainer;
+	private ApplicationGrid mContainer;
 	private ApplicationView[][] mApplications = null;
+	// false while rows are still built in background, tiles must not be bound or wired yet
+	private boolean mGridReady = false;
+	private boolean mUpdatePending = false;
+	private volatile int mGridGeneration = 0;
+	// background work of the home screen : rows, snapshots, folder contents and previews
+	private static final Executor sRowInflater = Executors.newSingleThreadExecutor();
+	private static final long SNAPSHOT_DELAY_MS = 2000;
+	private static final long SNAPSHOT_FADE_MS = 250;
+	private ImageView mSnapshot;
+	private final Runnable mSaveSnapshot = new Runnable() {
+		@Override
+		public void run() {
+			saveSnapshot();
+		}
+	};
 	private View mSettings;
 	private View mGridView;
 	private Setup mSetup;
+	private GridModel mModel;
+	private final GridBinder mBinder = new GridBinder();
+	private StartupScheduler mStartup;
 
 
 	public ApplicationFragment() {
@@ -124,158 +258,358 @@ public class ApplicationFragment extends Fragment implements View.OnClickListene
 		View view = inflater.inflate(R.layout.fragment_application, container, false);
 
 		mSetup = new Setup(getContext());
-		mContainer = (LinearLayout) view.findViewById(R.id.container);
+		mModel = GridModel.getInstance(getContext());
+		mContainer = (ApplicationGrid) view.findViewById(R.id.container);
+		mSnapshot = (ImageView) view.findViewById(R.id.grid_snapshot);
 		mSettings = view.findViewById(R.id.settings);
 		mGridView = view.findViewById(R.id.application_grid);
 		mClock = (TextView) view.findViewById(R.id.clock);
 		mDate = (TextView) view.findViewById(R.id.date);
-		final LinearLayout batteryLayout = (LinearLayout) view.findViewById(R.id.battery_layout);
+		mBatteryLayout = (LinearLayout) view.findViewById(R.id.battery_layout);
 		mBatteryLevel = (TextView) view.findViewById(R.id.battery_level);
 		mBatteryIcon = (ImageView) view.findViewById(R.id.battery_icon);
 
-		mTimeFormat = android.text.format.DateFormat.getTimeFormat(getActivity());
-		mDateFormat = android.text.format.DateFormat.getLongDateFormat(getActivity());
+		mIdleMonitor = new IdleMonitor(getActivity(), mIdleListener);
+		mPicker = new ApplicationPicker((ViewGroup) view.findViewById(R.id.picker),
+				(ViewGroup) view.findViewById(R.id.home), mPickerListener);
+
+		mSettings.setOnClickListener(this);
+		mGridView.setOnClickListener(this);
+
+		// only what the first frame shows is done before it
+		mStartup = new StartupScheduler()
+				.add("setup", StartupScheduler.PRE_FIRST_FRAME, this::applySetup)
+				.add("grid", StartupScheduler.PRE_FIRST_FRAME, this::createApplications, "setup")
+				.add("snapshot", StartupScheduler.PRE_FIRST_FRAME, () -> {
+					// tiles are still built in background, show the last grid picture meanwhile
+					if (!mGridReady)
+						showSnapshot();
+				}, "grid")
+				.add("clock", StartupScheduler.PRE_FIRST_FRAME, () -> {
+					// the header is shown on the first frame, only its updates wait
+					mTimeFormat = android.text.format.DateFormat.getTimeFormat(getActivity());
+					mDateFormat = android.text.format.DateFormat.getLongDateFormat(getActivity());
+					updateClockText(System.currentTimeMillis());
+				})
+				.add("clock_tick", StartupScheduler.POST_FIRST_FRAME, this::setClock, "clock")
+				.add("battery", StartupScheduler.POST_FIRST_FRAME, () -> {
+					mBatteryReady = true;
+					updateBatteryReceiver();
+				}, "setup")
+				.add("first_launch", StartupScheduler.IDLE, () -> {
+					//check if it's the first time the app is launched, if so, add some default apps
+					Setup setup = new Setup(getContext());
+					if (setup.isFirstLaunch()) {
+						setup.setFirstLaunchDone();
+						// a layout pushed by the provisioning provider is kept as it is
+						if (!LayoutProvider.isProvisioned(getContext()))
+							addDefaultApps();
+					}
+				}, "grid")
+				.add("maintenance", StartupScheduler.IDLE, () -> CacheMaintenance.getInstance(getContext()).schedule());
+		mStartup.start(view);
+
+		LocalBroadcastManager.getInstance(getContext()).registerReceiver(mSlotsChangedReceiver,
+				new IntentFilter(LayoutProvider.ACTION_SLOTS_CHANGED));
+		LocalBroadcastManager.getInstance(getContext()).registerReceiver(mLabelsChangedReceiver,
+				new IntentFilter(LabelCache.ACTION_LABELS_CHANGED));
+		PreferenceManager.getDefaultSharedPreferences(getContext())
+				.registerOnSharedPreferenceChangeListener(mPreferenceChangeListener);
+
+		return view;
+	}
+
+	@Override
+	public void onDestroyView() {
+		mHandler.removeCallbacks(mSaveSnapshot);
+		mHandler.removeCallbacks(mTimerTick);
+		mStartup.cancel();
+		mDirectLaunch.cancel();
+		mPicker.release();
+		mIdleMonitor.release();
+		LocalBroadcastManager.getInstance(getContext()).unregisterReceiver(mSlotsChangedReceiver);
+		LocalBroadcastManager.getInstance(getContext()).unregisterReceiver(mLabelsChangedReceiver);
+		PreferenceManager.getDefaultSharedPreferences(getContext())
+				.unregisterOnSharedPreferenceChangeListener(mPreferenceChangeListener);
+		super.onDestroyView();
+	}
+
+	@Override
+	public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+		super.dump(prefix, fd, writer, args);
+		mBinder.dump(prefix, writer);
+		if (mStartup != null)
+			mStartup.dump(prefix, writer);
+		if (mIdleMonitor != null) {
+			writer.print(prefix);
+			writer.println("Idle: " + mIdleMonitor.isIdle() + " (visible " + mIdleMonitor.isVisible() + ")");
+		}
+	}
+
+	/**
+	 * Swap the shared tile background and refresh the tiles in place.
+	 */
+	private void refreshBackgrounds() {
+		if (!TileBackgrounds.getInstance(getContext()).reload(getContext()) || !mGridReady)
+			return;
+
+		for (int y = 0; y < mGridY; y++) {
+			for (int x = 0; x < mGridX; x++) {
+				mApplications[y][x].refreshBackground();
+			}
+		}
+	}
 
+	private void applySetup() {
 		//keep screen on
 		mContainer.setKeepScreenOn(mSetup.keepScreenOn());
 
 		//show date
 		mDate.setVisibility(mSetup.showDate() ? View.VISIBLE : View.GONE);
 
-		if (mSetup.showBattery()) {
-			batteryLayout.setVisibility(View.VISIBLE);
-			getActivity().registerReceiver(this.mBatteryChangedReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
-			mBatteryChangedReceiverRegistered = true;
-		} else {
-			batteryLayout.setVisibility(View.INVISIBLE);
-			if (mBatteryChangedReceiverRegistered) {
-				getActivity().unregisterReceiver(this.mBatteryChangedReceiver);
-				mBatteryChangedReceiverRegistered = false;
-			}
-		}
-
-		mSettings.setOnClickListener(this);
-		mGridView.setOnClickListener(this);
+		mBatteryLayout.setVisibility(mSetup.showBattery() ? View.VISIBLE : View.INVISIBLE);
+		updateBatteryReceiver();
 
-		createApplications();
+		mDirectLaunch.setShortcutKeys(mSetup.getShortcutKeys());
+	}
 
-		//check if it's the first time the app is launched, if so, add some default apps
-		Setup setup = new Setup(getContext());
-		if (setup.isFirstLaunch()) {
-			setup.setFirstLaunchDone();
-			addDefaultApps();
+	/**
+	 * The battery receiver is only registered after the first frame, while the battery is shown
+	 * and the home screen is not idle.
+	 */
+	private void updateBatteryReceiver() {
+		if (mBatteryReady && mSetup.showBattery() && !mIdleMonitor.isIdle()) {
+			if (!mBatteryChangedReceiverRegistered) {
+				getActivity().registerReceiver(this.mBatteryChangedReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+				mBatteryChangedReceiverRegistered = true;
+			}
+		} else if (mBatteryChangedReceiverRegistered) {
+			getActivity().unregisterReceiver(this.mBatteryChangedReceiver);
+			mBatteryChangedReceiverRegistered = false;
 		}
+	}
 
-		return view;
+	/**
+	 * Apply the settings and rebuild the grid in place, without restarting the activity.
+	 */
+	private void reloadLayout() {
+		mModel.invalidate();
+		applySetup();
+		createApplications();
 	}
 
 	private void createApplications() {
 		mContainer.removeAllViews();
 
-		mGridX = mSetup.getGridX();
-		mGridY = mSetup.getGridY();
-
-		if (mGridX < 2)
-			mGridX = 2;
-		if (mGridY < 1)
-			mGridY = 1;
+		mGridX = mSetup.getGridColumns();
+		mGridY = mSetup.getGridRows();
 
 		int marginX = Utils.getPixelFromDp(getContext(), mSetup.getMarginX());
 		int marginY = Utils.getPixelFromDp(getContext(), mSetup.getMarginY());
 
 		boolean showNames = mSetup.showNames();
+		boolean flatTiles = mSetup.flatTiles();
 
 		mApplications = new ApplicationView[mGridY][mGridX];
+		mGridGeneration++;
+		mDirectLaunch.setSlotCount(mGridX * mGridY);
+
+		if (mSetup.asyncInflation()) {
+			createApplicationsAsync(marginX, marginY, showNames, flatTiles);
+			return;
+		}
 
-		int position = 0;
 		for (int y = 0; y < mGridY; y++) {
-			LinearLayout ll = new LinearLayout(getContext());
-			ll.setOrientation(LinearLayout.HORIZONTAL);
-			ll.setGravity(Gravity.CENTER_VERTICAL);
-			ll.setFocusable(false);
-			ll.setLayoutParams(new LinearLayout.LayoutParams(
-					LinearLayout.LayoutParams.MATCH_PARENT, 0, 1
-			));
+			mContainer.addView(createRow(getContext(), mApplications, y, marginX, marginY, showNames, flatTiles));
+		}
 
-			for (int x = 0; x < mGridX; x++) {
-				ApplicationView av = new ApplicationView(getContext());
-				av.setOnClickListener(this);
-				av.setOnLongClickListener(this);
-				av.setOnMenuOnClickListener(new View.OnClickListener() {
-					@Override
-					public void onClick(View v) {
-						onLongClick(v);
+		mGridReady = true;
+		updateApplications();
+		setApplicationOrder();
+	}
+
+	/**
+	 * Build the rows in background and attach them one by one, so the header is drawn
+	 * on the first frame. Focus order is wired once the last row is attached.
+	 */
+	private void createApplicationsAsync(final int marginX, final int marginY, final boolean showNames, final boolean flatTiles) {
+		final Context context = getContext();
+		final ApplicationView[][] applications = mApplications;
+		final int generation = mGridGeneration;
+		final int gridY = mGridY;
+
+		mGridReady = false;
+		sRowInflater.execute(() -> {
+			for (int y = 0; y < gridY; y++) {
+				if (generation != mGridGeneration)
+					return;
+
+				final int row = y;
+				final LinearLayout ll = createRow(context, applications, row, marginX, marginY, showNames, flatTiles);
+				mHandler.post(() -> {
+					if (generation != mGridGeneration || !isAdded())
+						return;
+
+					mContainer.addView(ll);
+					bindRow(row);
+					if (row == gridY - 1) {
+						mGridReady = true;
+						setApplicationOrder();
+						if (mUpdatePending) {
+							mUpdatePending = false;
+							updateApplications();
+						} else {
+							onGridBound();
+						}
 					}
 				});
-				av.setPosition(position++);
-				av.showName(showNames);
-				av.setId(View.generateViewId());
-				LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(0, LinearLayout.LayoutParams.MATCH_PARENT, 1);
-				lp.setMargins(marginX, marginY, marginX, marginY);
-				av.setLayoutParams(lp);
-				ll.addView(av);
-				mApplications[y][x] = av;
 			}
-			mContainer.addView(ll);
+		});
+	}
+
+	/**
+	 * Build one row of tiles, safe to call off the main thread as the views are not attached yet.
+	 */
+	private LinearLayout createRow(Context context, ApplicationView[][] applications, int y, int marginX, int marginY, boolean showNames, boolean flatTiles) {
+		int gridX = applications[y].length;
+		int position = y * gridX;
+
+		LinearLayout ll = new LinearLayout(context);
+		ll.setOrientation(LinearLayout.HORIZONTAL);
+		ll.setGravity(Gravity.CENTER_VERTICAL);
+		ll.setFocusable(false);
+		ll.setLayoutParams(new LinearLayout.LayoutParams(
+				LinearLayout.LayoutParams.MATCH_PARENT, 0, 1
+		));
+
+		for (int x = 0; x < gridX; x++) {
+			ApplicationView av = new ApplicationView(context, flatTiles);
+			av.setOnClickListener(this);
+			av.setOnLongClickListener(this);
+			av.setOnMenuOnClickListener(new View.OnClickListener() {
+				@Override
+				public void onClick(View v) {
+					onLongClick(v);
+				}
+			});
+			av.setPosition(position++);
+			av.showName(showNames);
+			LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(0, LinearLayout.LayoutParams.MATCH_PARENT, 1);
+			lp.setMargins(marginX, marginY, marginX, marginY);
+			av.setLayoutParams(lp);
+			ll.addView(av);
+			applications[y][x] = av;
 		}
+		return (ll);
+	}
 
-		updateApplications();
-		setApplicationOrder();
+	private void bindRow(int y) {
+		for (int x = 0; x < mGridX; x++) {
+			ApplicationView app = mApplications[y][x];
+			mBinder.bind(app, mModel.getSlot(app.getPosition()), this::setApplication);
+		}
 	}
 
+	/**
+	 * The grid container finds the next tile from the tile coordinates,
+	 * only the buttons around the grid are wired to its first and last tiles.
+	 */
 	private void setApplicationOrder() {
+		mContainer.setTiles(mApplications, mGridView, mSettings);
+	}
+
+
+	private void updateApplications() {
+		if (!mGridReady) {
+			mUpdatePending = true;
+			return;
+		}
+
 		for (int y = 0; y < mGridY; y++) {
-			for (int x = 0; x < mGridX; x++) {
-				int upId = R.id.application_grid;
-				int downId = R.id.settings;
-				int leftId = R.id.application_grid;
-				int rightId = R.id.settings;
-
-				if (y > 0)
-					upId = mApplications[y - 1][x].getId();
-
-				if (y + 1 < mGridY)
-					downId = mApplications[y + 1][x].getId();
-
-				if (x > 0)
-					leftId = mApplications[y][x - 1].getId();
-				else if (y > 0)
-					leftId = mApplications[y - 1][mGridX - 1].getId();
-
-				if (x + 1 < mGridX)
-					rightId = mApplications[y][x + 1].getId();
-				else if (y + 1 < mGridY)
-					rightId = mApplications[y + 1][0].getId();
-
-				mApplications[y][x].setNextFocusLeftId(leftId);
-				mApplications[y][x].setNextFocusRightId(rightId);
-				mApplications[y][x].setNextFocusUpId(upId);
-				mApplications[y][x].setNextFocusDownId(downId);
-			}
+			bindRow(y);
 		}
+		onGridBound();
+	}
 
-		mGridView.setNextFocusLeftId(R.id.settings);
-		mGridView.setNextFocusRightId(mApplications[0][0].getId());
-		mGridView.setNextFocusUpId(R.id.settings);
-		mGridView.setNextFocusDownId(mApplications[0][0].getId());
+	private void showSnapshot() {
+		Bitmap snapshot = GridSnapshot.load(getContext(), GridSnapshot.getState(getContext(), mGridX, mGridY));
+		if (snapshot == null)
+			return;
 
-		mSettings.setNextFocusLeftId(mApplications[mGridY - 1][mGridX - 1].getId());
-		mSettings.setNextFocusRightId(R.id.application_grid);
-		mSettings.setNextFocusUpId(mApplications[mGridY - 1][mGridX - 1].getId());
-		mSettings.setNextFocusDownId(R.id.application_grid);
+		mSnapshot.setImageBitmap(snapshot);
+		mSnapshot.setAlpha(1F);
+		mSnapshot.setVisibility(View.VISIBLE);
+		mContainer.setAlpha(0F);
 	}
 
+	/**
+	 * Every tile is bound : cross-fade from the snapshot to the live tiles,
+	 * and take a new snapshot once the grid stays stable.
+	 */
+	private void onGridBound() {
+		if (mSnapshot.getVisibility() == View.VISIBLE) {
+			mContainer.animate().alpha(1F).setDuration(SNAPSHOT_FADE_MS);
+			mSnapshot.animate().alpha(0F).setDuration(SNAPSHOT_FADE_MS).withEndAction(() -> {
+				mSnapshot.setVisibility(View.GONE);
+				mSnapshot.setImageDrawable(null);
+			});
+		} else {
+			mContainer.setAlpha(1F);
+		}
 
-	private void updateApplications() {
-		PackageManager pm = getActivity().getPackageManager();
-		SharedPreferences prefs = getActivity().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+		mHandler.removeCallbacks(mSaveSnapshot);
+		if (mSetup.asyncInflation())
+			mHandler.postDelayed(mSaveSnapshot, SNAPSHOT_DELAY_MS);
+
+		// warm up the picker catalogue and check the package index once the home screen is shown
+		AppCatalogue.getInstance(getContext()).load();
+		mModel.verifyIndex();
+	}
+
+	private void saveSnapshot() {
+		if (!mGridReady || !isAdded())
+			return;
+
+		final Bitmap bitmap = GridSnapshot.capture(mContainer);
+		if (bitmap == null)
+			return;
+
+		final Context context = getContext().getApplicationContext();
+		final JSONObject state = GridSnapshot.getState(context, mGridX, mGridY);
+		if (state == null)
+			return;
 
+		final String[] labels = new String[mGridX * mGridY];
 		for (int y = 0; y < mGridY; y++) {
 			for (int x = 0; x < mGridX; x++) {
+				labels[mApplications[y][x].getPosition()] = mApplications[y][x].getName();
+			}
+		}
+
+		sRowInflater.execute(() -> GridSnapshot.save(context, bitmap, state, labels));
+	}
+
+	/**
+	 * Rebind only the given slots, after a provisioning update.
+	 */
+	private void updateApplications(int[] positions) {
+		if (positions == null)
+			return;
+		if (!mGridReady) {
+			mUpdatePending = true;
+			return;
+		}
+
+		for (int position : positions) {
+			int y = position / mGridX;
+			int x = position % mGridX;
+
+			if (y < mGridY) {
 				ApplicationView app = mApplications[y][x];
-				setApplication(pm, app, prefs.getString(app.getPreferenceKey(), null));
+				mBinder.bind(app, mModel.getSlot(position), this::setApplication);
 			}
 		}
+		onGridBound();
 	}
 
 	private void restartActivity() {
@@ -290,99 +624,144 @@ public class ApplicationFragment extends Fragment implements View.OnClickListene
 
 
 	private void writePreferences(int appNum, String packageName) {
-		SharedPreferences prefs = getActivity().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
-		SharedPreferences.Editor editor = prefs.edit();
-		String key = ApplicationView.getPreferenceKey(appNum);
-
-		if (TextUtils.isEmpty(packageName))
-			editor.remove(key);
-		else
-			editor.putString(key, packageName);
-
-		editor.apply();
+		mModel.setSlot(appNum, packageName);
 	}
 
-	private void setApplication(PackageManager pm, ApplicationView app, String packageName) {
-		try {
-
-			if (TextUtils.isEmpty(packageName) == false) {
-				PackageInfo pi = pm.getPackageInfo(packageName, 0);
-				if (pi != null) {
-					AppInfo appInfo = new AppInfo(pm, getResolveInfo(pm, pi.applicationInfo));
-					app.setImageDrawable(appInfo.getIcon())
-							.setText(appInfo.getName())
-							.setPackageName(appInfo.getPackageName());
-				}
-			} else {
-				app.setImageResource(R.drawable.ic_add)
-						.setText("")
-						.setPackageName(null);
+	private void setApplication(final ApplicationView app, GridModel.Slot slot) {
+		Folder folder = slot.getFolder();
+		AppInfo appInfo = slot.getAppInfo();
+
+		if (folder != null) {
+			Drawable preview = FolderPreview.peekPreview(getContext(), folder);
+
+			app.setImageDrawable(preview != null ? preview : getContext().getDrawable(R.drawable.ic_folder))
+					.setText(getString(R.string.folder_name, folder.size()))
+					.setPackageName(null)
+					.setFolder(folder);
+			if (preview == null)
+				loadFolderPreview(app, folder);
+		} else if (appInfo != null) {
+			Drawable icon = appInfo.peekIcon();
+
+			// keep the current icon of the tile until the new one is decoded
+			if (icon != null || !appInfo.getPackageName().equals(app.getPackageName()))
+				app.setImageDrawable(icon);
+			if (icon == null) {
+				appInfo.getIconAsync((info, loaded) -> {
+					if (info.getPackageName().equals(app.getPackageName()))
+						app.setImageDrawable(loaded);
+				});
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
+			app.setText(appInfo.getName())
+					.setPackageName(appInfo.getPackageName())
+					.setFolder(null);
+		} else {
+			app.setImageResource(R.drawable.ic_add)
+					.setText("")
+					.setPackageName(null)
+					.setFolder(null);
 		}
 	}
 
-	//create a method to get ResolveInfo from ApplicationInfo
-	private ResolveInfo getResolveInfo(PackageManager pm, ApplicationInfo applicationInfo) {
-		Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
-		mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+	/**
+	 * Decode or render the folder preview in background, the tile shows the folder icon meanwhile.
+	 */
+	private void loadFolderPreview(final ApplicationView app, final Folder folder) {
+		final Context context = getContext().getApplicationContext();
+
+		sRowInflater.execute(() -> {
+			final Drawable preview = FolderPreview.getPreview(context, folder);
+			mHandler.post(() -> {
+				// the tile was bound to another slot meanwhile
+				if (app.getFolder() == folder)
+					app.setImageDrawable(preview);
+			});
+		});
+	}
 
-		List<ResolveInfo> intentActivities = pm.queryIntentActivities(mainIntent, 0);
+	@Override
+	public void onStart() {
+		super.onStart();
+		mIdleMonitor.setStarted(true);
+	}
 
-		for (ResolveInfo resolveInfo : intentActivities) {
-			if (resolveInfo.activityInfo.packageName.equals(applicationInfo.packageName)) {
-				return resolveInfo;
-			}
-		}
+	@Override
+	public void onStop() {
+		mIdleMonitor.setStarted(false);
+		super.onStop();
+	}
 
-		mainIntent = new Intent(Intent.ACTION_MAIN, null);
-		intentActivities = pm.queryIntentActivities(mainIntent, 0);
+	/**
+	 * Forwarded by the activity on each key or touch event, ends an idle state of the input timeout.
+	 */
+	public void onUserInteraction() {
+		if (mIdleMonitor != null)
+			mIdleMonitor.onUserInteraction();
+	}
 
-		for (ResolveInfo resolveInfo : intentActivities) {
-			if (resolveInfo.activityInfo.packageName.equals(applicationInfo.packageName)) {
-				return resolveInfo;
-			}
-		}
+	/**
+	 * Forwarded by the activity for the key down events, digits and shortcut keys open a slot.
+	 *
+	 * @return true if the key was used to select a slot
+	 */
+	public boolean onDirectLaunchKey(KeyEvent event) {
+		return (mGridReady && !mPicker.isShown() && mDirectLaunch.onKeyDown(event));
+	}
 
-		return null;
+	/**
+	 * Forwarded by the activity, the home screen itself ignores back.
+	 *
+	 * @return true if back closed the picker
+	 */
+	public boolean onBackPressed() {
+		if (!mPicker.isShown())
+			return (false);
+		mPicker.dismiss();
+		return (true);
 	}
 
-	@Override
-	public void onStart() {
-		super.onStart();
-		setClock();
-		if (mSetup.showBattery() && !mBatteryChangedReceiverRegistered) {
-			getActivity().registerReceiver(this.mBatteryChangedReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
-			mBatteryChangedReceiverRegistered = true;
-		}
-		mHandler.postDelayed(mTimerTick, 1000);
+	/**
+	 * Open a slot selected from the keys, through the launch intent resolved by the grid model.
+	 */
+	private void launchSlot(int position) {
+		GridModel.Slot slot = mModel.getSlot(position);
+
+		if (slot.getFolder() != null)
+			openFolder(position, slot.getFolder());
+		else if (slot.getLaunchIntent() != null)
+			openApplication(slot.getValue(), slot.getLaunchIntent());
 	}
 
-	@Override
-	public void onPause() {
-		super.onPause();
+	/**
+	 * Ticks every second while awake. When idle, the clock only ticks on the minute
+	 * while the home screen is still shown, and stops otherwise.
+	 */
+	private void setClock() {
+		long now = System.currentTimeMillis();
+		updateClockText(now);
+
 		mHandler.removeCallbacks(mTimerTick);
-		if (mBatteryChangedReceiverRegistered) {
-			getActivity().unregisterReceiver(this.mBatteryChangedReceiver);
-		}
+		if (!mIdleMonitor.isIdle())
+			mHandler.postDelayed(mTimerTick, 1000);
+		else if (mIdleMonitor.isVisible())
+			mHandler.postDelayed(mTimerTick, 60000 - now % 60000);
 	}
 
-	private void setClock() {
-		Date date = new Date(System.currentTimeMillis());
+	private void updateClockText(long now) {
+		Date date = new Date(now);
 		mClock.setText(mTimeFormat.format(date));
 		mDate.setText(mDateFormat.format(date));
-		mHandler.postDelayed(mTimerTick, 1000);
 	}
 
 	@Override
 	public boolean onLongClick(View v) {
 		if (v instanceof ApplicationView) {
 			ApplicationView appView = (ApplicationView) v;
-			if (appView.hasPackage() && mSetup.iconsLocked()) {
+			boolean assigned = appView.hasPackage() || appView.isFolder();
+			if (assigned && mSetup.iconsLocked()) {
 				Toast.makeText(getActivity(), R.string.home_locked, Toast.LENGTH_SHORT).show();
 			} else {
-				openApplicationList(ApplicationList.VIEW_LIST, appView.getPosition(), appView.hasPackage(), REQUEST_CODE_APPLICATION_LIST);
+				openApplicationList(ApplicationList.VIEW_LIST, appView.getPosition(), assigned, REQUEST_CODE_APPLICATION_LIST);
 			}
 			return (true);
 		}
@@ -410,24 +789,97 @@ public class ApplicationFragment extends Fragment implements View.OnClickListene
 	}
 
 	private void openApplication(ApplicationView v) {
-		if (v.hasPackage() == false) {
+		if (v.isFolder()) {
+			openFolder(v.getPosition(), v.getFolder());
+		} else if (v.hasPackage() == false) {
 			openApplicationList(ApplicationList.VIEW_LIST, v.getPosition(), false, REQUEST_CODE_APPLICATION_LIST);
 		} else {
-			openApplication(v.getPackageName());
+			// launch intent resolved once by the grid model
+			Intent launchIntent = mModel.getSlot(v.getPosition()).getLaunchIntent();
+			if (launchIntent != null)
+				openApplication(v.getPackageName(), launchIntent);
+			else
+				openApplication(v.getPackageName());
 		}
 	}
 
 	private void openApplication(String packageName) {
+		openApplication(packageName, getLaunchIntentForPackage(packageName));
+	}
+
+	private void openApplication(String packageName, Intent startApp) {
 		try {
 			Log.i(TAG, "openApplication: " + packageName);
-			Intent startApp = getLaunchIntentForPackage(packageName);
 			startActivity(startApp);
 		} catch (Exception e) {
 			Toast.makeText(getActivity(), packageName + " : " + e.getMessage(), Toast.LENGTH_LONG).show();
 		}
 	}
 
+	/**
+	 * Folder contents are only resolved here, when the folder is opened,
+	 * the home screen only binds the cached preview of the folder.
+	 */
+	private void openFolder(final int position, final Folder folder) {
+		final Context context = getContext();
+
+		sRowInflater.execute(() -> {
+			final List<AppInfo> apps = new ArrayList<>();
+
+			for (String packageName : folder.getPackages()) {
+				apps.addAll(Utils.queryApplications(context, packageName));
+			}
+
+			mHandler.post(() -> showFolder(position, folder, apps));
+		});
+	}
+
+	private void showFolder(final int position, final Folder folder, List<AppInfo> apps) {
+		if (!isAdded())
+			return;
+
+		View view = View.inflate(getContext(), R.layout.folder, null);
+		GridView grid = (GridView) view.findViewById(R.id.list);
+		grid.setAdapter(new ApplicationAdapter(getContext(), R.layout.grid_item, apps.toArray(new AppInfo[0])));
+
+		final AlertDialog dialog = new AlertDialog.Builder(getContext())
+				.setTitle(getString(R.string.folder_name, folder.size()))
+				.setView(view)
+				.create();
+
+		grid.setOnItemClickListener((parent, v, index, id) -> {
+			dialog.dismiss();
+			openApplication(((AppInfo) v.getTag()).getPackageName());
+		});
+		grid.setOnItemLongClickListener((parent, v, index, id) -> {
+			if (mSetup.iconsLocked()) {
+				Toast.makeText(getActivity(), R.string.home_locked, Toast.LENGTH_SHORT).show();
+			} else {
+				folder.remove(((AppInfo) v.getTag()).getPackageName());
+				writePreferences(position, folder.toPreference());
+				updateApplications();
+				dialog.dismiss();
+			}
+			return (true);
+		});
+		dialog.show();
+	}
+
+	private void addToFolder(int appNum, String packageName) {
+		Folder folder = Folder.fromPreference(mModel.getValue(appNum));
+
+		folder.add(packageName);
+		writePreferences(appNum, folder.toPreference());
+	}
+
 	private void openApplicationList(int viewType, int appNum, boolean showDelete, int requestCode) {
+		// slot edits of the in place picker apply at once, without an activity result
+		if (mSetup.inPlacePicker()) {
+			mPickerRequestCode = requestCode;
+			mPicker.show(viewType, appNum, showDelete);
+			return;
+		}
+
 		Intent intent = new Intent(getActivity(), ApplicationList.class);
 		intent.putExtra(ApplicationList.APPLICATION_NUMBER, appNum);
 		intent.putExtra(ApplicationList.VIEW_TYPE, viewType);
@@ -453,7 +905,12 @@ public class ApplicationFragment extends Fragment implements View.OnClickListene
 			case REQUEST_CODE_WALLPAPER:
 				break;
 			case REQUEST_CODE_PREFERENCES:
-				restartActivity();
+				// a restart also applies an imported layout
+				if (mRestartRequired)
+					restartActivity();
+				else if (intent != null && intent.getBooleanExtra(Preferences.LAYOUT_IMPORTED, false))
+					reloadLayout();
+				mRestartRequired = false;
 				break;
 			case REQUEST_CODE_APPLICATION_START:
 				if (intent != null)
@@ -466,6 +923,8 @@ public class ApplicationFragment extends Fragment implements View.OnClickListene
 
 					if (extra.containsKey(ApplicationList.DELETE) && extra.getBoolean(ApplicationList.DELETE)) {
 						writePreferences(appNum, null);
+					} else if (extra.getBoolean(ApplicationList.ADD_TO_FOLDER)) {
+						addToFolder(appNum, extra.getString(ApplicationList.PACKAGE_NAME));
 					} else {
 						writePreferences(appNum,
 								intent.getExtras().getString(ApplicationList.PACKAGE_NAME)
@@ -477,31 +936,30 @@ public class ApplicationFragment extends Fragment implements View.OnClickListene
 		}
 	}
 
+	/**
+	 * Look the default applications up in background, then write them to the first slots
+	 * in one batch on the main thread.
+	 */
 	private void addDefaultApps() {
-		Executors.newSingleThreadExecutor().execute(() -> {
-
-			Handler mainHandler = new Handler(Looper.getMainLooper());
-
-			PackageManager pm = getActivity().getPackageManager();
-			int currentApp = 0;
+		final PackageManager pm = getContext().getApplicationContext().getPackageManager();
+		final GridModel model = mModel;
 
-			for (int i = 0; i < DEFAULT_APPS.length; i++) {
-				try {
-					PackageInfo pi = pm.getPackageInfo(DEFAULT_APPS[i], 0);
+		sRowInflater.execute(() -> {
+			final List<String> packages = new ArrayList<>();
 
-					if (pi != null && getLaunchIntentForPackage(pi.packageName) != null) {
-						writePreferences(currentApp, pi.packageName);
-						currentApp++;
-					}
-				} catch (PackageManager.NameNotFoundException e) {
-					e.printStackTrace();
-				}
+			for (String packageName : DEFAULT_APPS) {
+				if (pm.getLaunchIntentForPackage(packageName) != null
+						|| pm.getLeanbackLaunchIntentForPackage(packageName) != null)
+					packages.add(packageName);
 			}
 
-			mainHandler.post(() -> {
-				updateApplications();
+			mHandler.post(() -> {
+				for (int i = 0; i < packages.size(); i++) {
+					model.setSlot(i, packages.get(i));
+				}
+				if (isAdded())
+					updateApplications();
 			});
-
 		});
 	}
 }
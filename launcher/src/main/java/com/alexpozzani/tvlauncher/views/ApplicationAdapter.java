@@ -21,19 +21,77 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.ArrayAdapter;
 import android.widget.ImageView;
+import android.widget.ListView;
 import android.widget.TextView;
 
 import com.alexpozzani.tvlauncher.R;
 import com.alexpozzani.tvlauncher.AppInfo;
+import com.alexpozzani.tvlauncher.DeviceProfile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class ApplicationAdapter extends ArrayAdapter<AppInfo> {
 	private final int mResource;
+	private final int mPrefetchDepth;
+	private boolean mPrefetched = false;
+	private int mPrefetchedIcons = 0;
+	private List<AppInfo> mSource;
 
 	public ApplicationAdapter(Context context, int resId, AppInfo[] items) {
-		super(context, R.layout.list_item, items);
+		this(context, resId, Arrays.asList(items));
+	}
+
+	public ApplicationAdapter(Context context, int resId, List<AppInfo> items) {
+		// the items are copied so they can be replaced in place
+		super(context, R.layout.list_item, new ArrayList<>(items));
 		mResource = resId;
+		mPrefetchDepth = DeviceProfile.getInstance(context).getPrefetchDepth();
+		mSource = items;
+	}
+
+	/**
+	 * Replace the items without resetting the list, which keeps its scroll position
+	 * and the selected application if it is still there.
+	 */
+	public void update(AbsListView listView, List<AppInfo> applications) {
+		if (applications == mSource)
+			return;
+
+		AppInfo selected = (AppInfo) listView.getSelectedItem();
+		View selectedView = listView.getSelectedView();
+		int selectedTop = selectedView != null ? selectedView.getTop() : 0;
+
+		mSource = applications;
+		setNotifyOnChange(false);
+		clear();
+		addAll(applications);
+		mPrefetched = false;
+		mPrefetchedIcons = 0;
+		notifyDataSetChanged();
+
+		if (selected == null)
+			return;
+		int position = indexOf(selected.getPackageName());
+		if (position < 0 || position == listView.getSelectedItemPosition())
+			return;
+		if (listView instanceof ListView)
+			((ListView) listView).setSelectionFromTop(position, selectedTop);
+		else
+			listView.setSelection(position);
+	}
+
+	private int indexOf(String packageName) {
+		for (int i = 0; i < getCount(); i++) {
+			AppInfo appInfo = getItem(i);
+			if (appInfo != null && appInfo.getPackageName().equals(packageName))
+				return (i);
+		}
+		return (-1);
 	}
 
 	@NonNull
@@ -50,12 +108,52 @@ public class ApplicationAdapter extends ArrayAdapter<AppInfo> {
 		TextView packageName = (TextView) view.findViewById(R.id.application_name);
 		AppInfo appInfo = getItem(position);
 
+		if (!mPrefetched) {
+			mPrefetched = true;
+			prefetchLabels(packageName);
+		}
+
+		prefetchIcons(position);
 		if (appInfo != null) {
 			view.setTag(appInfo);
-			packageName.setText(appInfo.getName());
-			if (appInfo.getIcon() != null)
-				packageImage.setImageDrawable(appInfo.getIcon());
+			LabelPrecomputer.setText(packageName, appInfo.getName());
+			packageImage.setTag(appInfo);
+			packageImage.setImageDrawable(appInfo.peekIcon());
+			if (appInfo.peekIcon() == null) {
+				appInfo.getIconAsync((info, icon) -> {
+					if (packageImage.getTag() == info && icon != null)
+						packageImage.setImageDrawable(icon);
+				});
+			}
 		}
 		return (view);
 	}
+
+	/**
+	 * Load in background the icons of the items following the bound one, up to the prefetch depth.
+	 */
+	private void prefetchIcons(int position) {
+		int last = Math.min(getCount(), position + 1 + mPrefetchDepth);
+
+		for (int i = Math.max(position + 1, mPrefetchedIcons); i < last; i++) {
+			AppInfo appInfo = getItem(i);
+			if (appInfo != null && appInfo.peekIcon() == null)
+				appInfo.getIconAsync((info, icon) -> {});
+		}
+		mPrefetchedIcons = Math.max(mPrefetchedIcons, last);
+	}
+
+	/**
+	 * Measure in background, with the metrics of the first bound item, the labels of the first
+	 * items, twice the prefetch depth.
+	 */
+	private void prefetchLabels(TextView textView) {
+		List<String> labels = new ArrayList<>();
+		for (int i = 0; i < Math.min(getCount(), mPrefetchDepth * 2); i++) {
+			AppInfo appInfo = getItem(i);
+			if (appInfo != null)
+				labels.add(appInfo.getName());
+		}
+		LabelPrecomputer.prefetch(textView, labels);
+	}
 }
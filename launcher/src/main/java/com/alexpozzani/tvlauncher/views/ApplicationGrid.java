@@ -0,0 +1,142 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher.views;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.View;
+import android.widget.LinearLayout;
+
+import com.alexpozzani.tvlauncher.R;
+
+/**
+ * Container of the home grid rows, which finds the next focused tile from the tile coordinates.
+ * <p>
+ * Left and right follow the slot order and wrap to the previous or next row, up and down keep
+ * the column. Moving out of the grid before the first tile or above the first row goes to the
+ * leading view (application list button), after the last tile or below the last row to the
+ * trailing view (settings button). Tiles which are hidden or can not take focus are passed over
+ * in the same direction, so the grid needs no wiring when a slot is left out.
+ */
+public class ApplicationGrid extends LinearLayout {
+	private ApplicationView[][] mTiles;
+	private View mLeading;
+	private View mTrailing;
+
+	public ApplicationGrid(Context context) {
+		super(context);
+	}
+
+	public ApplicationGrid(Context context, AttributeSet attrs) {
+		super(context, attrs);
+	}
+
+	public ApplicationGrid(Context context, AttributeSet attrs, int defStyle) {
+		super(context, attrs, defStyle);
+	}
+
+	/**
+	 * Set the tiles once every row is attached, the leading and trailing views get the first
+	 * and last focusable tiles as their next focus into the grid.
+	 */
+	public void setTiles(ApplicationView[][] tiles, View leading, View trailing) {
+		mTiles = tiles;
+		mLeading = leading;
+		mTrailing = trailing;
+
+		for (ApplicationView[] row : tiles) {
+			for (ApplicationView tile : row) {
+				if (tile != null && (tile.getId() == R.id.grid_first_tile || tile.getId() == R.id.grid_last_tile))
+					tile.setId(NO_ID);
+			}
+		}
+
+		View first = findTile(-1, 1);
+		View last = findTile(getCount(), -1);
+		if (first == null || last == null)
+			return;
+
+		first.setId(R.id.grid_first_tile);
+		last.setId(R.id.grid_last_tile);
+
+		leading.setNextFocusLeftId(trailing.getId());
+		leading.setNextFocusRightId(R.id.grid_first_tile);
+		leading.setNextFocusUpId(trailing.getId());
+		leading.setNextFocusDownId(R.id.grid_first_tile);
+
+		trailing.setNextFocusLeftId(R.id.grid_last_tile);
+		trailing.setNextFocusRightId(leading.getId());
+		trailing.setNextFocusUpId(R.id.grid_last_tile);
+		trailing.setNextFocusDownId(leading.getId());
+	}
+
+	@Override
+	public View focusSearch(View focused, int direction) {
+		int index = indexOf(focused);
+		if (index < 0)
+			return (super.focusSearch(focused, direction));
+
+		int columns = mTiles[0].length;
+		switch (direction) {
+			case FOCUS_LEFT:
+			case FOCUS_BACKWARD:
+				return (findTile(index, -1));
+			case FOCUS_RIGHT:
+			case FOCUS_FORWARD:
+				return (findTile(index, 1));
+			case FOCUS_UP:
+				return (findTile(index, -columns));
+			case FOCUS_DOWN:
+				return (findTile(index, columns));
+			default:
+				return (super.focusSearch(focused, direction));
+		}
+	}
+
+	/**
+	 * @return the first focusable tile from the index by steps, or the leading or trailing view out of the grid
+	 */
+	private View findTile(int index, int step) {
+		int columns = mTiles[0].length;
+		int count = getCount();
+
+		for (int i = index + step; i >= 0 && i < count; i += step) {
+			ApplicationView tile = mTiles[i / columns][i % columns];
+			if (tile != null && tile.getVisibility() == VISIBLE && tile.isFocusable())
+				return (tile);
+		}
+		if (index < 0 || index >= count)
+			return (null);
+		return (step < 0 ? mLeading : mTrailing);
+	}
+
+	private int indexOf(View view) {
+		if (mTiles == null || !(view instanceof ApplicationView))
+			return (-1);
+
+		int index = ((ApplicationView) view).getPosition();
+		int columns = mTiles[0].length;
+		if (index < 0 || index >= getCount() || mTiles[index / columns][index % columns] != view)
+			return (-1);
+		return (index);
+	}
+
+	private int getCount() {
+		return (mTiles.length * mTiles[0].length);
+	}
+}
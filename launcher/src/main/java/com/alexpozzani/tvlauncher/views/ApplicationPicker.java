@@ -0,0 +1,184 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher.views;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.Toast;
+
+import com.alexpozzani.tvlauncher.AppCatalogue;
+import com.alexpozzani.tvlauncher.AppInfo;
+import com.alexpozzani.tvlauncher.R;
+import com.alexpozzani.tvlauncher.activities.ApplicationList;
+
+import java.util.List;
+
+/**
+ * Application picker shown over the home screen, same list and grid modes and actions
+ * as {@link ApplicationList} without starting an activity.
+ * <p>
+ * Each mode is inflated on first use then kept, the items come from the resident
+ * {@link AppCatalogue}. The home content does not take focus while the picker is shown,
+ * the focused view gets the focus back when the picker is dismissed.
+ */
+public class ApplicationPicker implements AdapterView.OnItemClickListener, View.OnClickListener {
+	private final ViewGroup mOverlay;
+	private final ViewGroup mHome;
+	private final Listener mListener;
+	private final View[] mContents = new View[2];
+	private AbsListView mListView;
+	private View mFocused;
+	private int mViewType;
+	private int mPosition;
+	private boolean mAddToFolder = false;
+
+	public interface Listener {
+		/**
+		 * @param position    slot the picker was shown for
+		 * @param packageName picked application
+		 * @param addToFolder true if the application is added to the slot folder
+		 */
+		void onApplicationPicked(int position, String packageName, boolean addToFolder);
+
+		void onDeletePicked(int position);
+	}
+
+	private final AppCatalogue.Listener mCatalogueListener = new AppCatalogue.Listener() {
+		@Override
+		public void onCatalogueChanged(List<AppInfo> applications) {
+			if (isShown())
+				bindApplications(applications);
+		}
+	};
+
+	public ApplicationPicker(ViewGroup overlay, ViewGroup home, Listener listener) {
+		mOverlay = overlay;
+		mHome = home;
+		mListener = listener;
+		AppCatalogue.getInstance(overlay.getContext()).addListener(mCatalogueListener);
+	}
+
+	public void release() {
+		AppCatalogue.getInstance(mOverlay.getContext()).removeListener(mCatalogueListener);
+	}
+
+	/**
+	 * @param viewType {@link ApplicationList#VIEW_LIST} or {@link ApplicationList#VIEW_GRID}
+	 */
+	public void show(int viewType, int position, boolean showDelete) {
+		mViewType = viewType;
+		mPosition = position;
+		mAddToFolder = false;
+
+		View content = getContent(viewType);
+		for (View view : mContents) {
+			if (view != null)
+				view.setVisibility(view == content ? View.VISIBLE : View.GONE);
+		}
+		content.findViewById(R.id.bottom_panel).setVisibility(showDelete ? View.VISIBLE : View.GONE);
+		content.findViewById(R.id.folder).setSelected(false);
+		mListView = (AbsListView) content.findViewById(R.id.list);
+
+		AppCatalogue catalogue = AppCatalogue.getInstance(mOverlay.getContext());
+		if (catalogue.getApplications() != null)
+			bindApplications(catalogue.getApplications());
+		else
+			catalogue.load();
+
+		mFocused = mHome.findFocus();
+		mHome.setDescendantFocusability(ViewGroup.FOCUS_BLOCK_DESCENDANTS);
+		mOverlay.setVisibility(View.VISIBLE);
+		mListView.setSelection(0);
+		mListView.requestFocus();
+	}
+
+	public void dismiss() {
+		if (!isShown())
+			return;
+
+		mOverlay.setVisibility(View.GONE);
+		mHome.setDescendantFocusability(ViewGroup.FOCUS_AFTER_DESCENDANTS);
+		if (mFocused != null)
+			mFocused.requestFocus();
+		mFocused = null;
+	}
+
+	public boolean isShown() {
+		return (mOverlay.getVisibility() == View.VISIBLE);
+	}
+
+	private View getContent(int viewType) {
+		if (mContents[viewType] == null) {
+			View content = View.inflate(mOverlay.getContext(),
+					viewType == ApplicationList.VIEW_LIST ? R.layout.listview : R.layout.gridview, null);
+
+			((AbsListView) content.findViewById(R.id.list)).setOnItemClickListener(this);
+			content.findViewById(R.id.delete).setOnClickListener(this);
+			content.findViewById(R.id.folder).setOnClickListener(this);
+			content.findViewById(R.id.cancel).setOnClickListener(this);
+			mOverlay.addView(content);
+			mContents[viewType] = content;
+		}
+		return (mContents[viewType]);
+	}
+
+	/**
+	 * The adapter of a mode is created once, a catalogue change updates its items in place.
+	 */
+	private void bindApplications(List<AppInfo> applications) {
+		ApplicationAdapter adapter = (ApplicationAdapter) mListView.getAdapter();
+
+		if (adapter != null)
+			adapter.update(mListView, applications);
+		else
+			mListView.setAdapter(new ApplicationAdapter(mOverlay.getContext(),
+					mViewType == ApplicationList.VIEW_LIST ? R.layout.list_item : R.layout.grid_item,
+					applications));
+	}
+
+	@Override
+	public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+		AppInfo appInfo = (AppInfo) view.getTag();
+
+		dismiss();
+		mListener.onApplicationPicked(mPosition, appInfo.getPackageName(), mAddToFolder);
+	}
+
+	@Override
+	public void onClick(View v) {
+		switch (v.getId()) {
+			case R.id.delete:
+				dismiss();
+				mListener.onDeletePicked(mPosition);
+				break;
+
+			case R.id.folder:
+				mAddToFolder = !mAddToFolder;
+				v.setSelected(mAddToFolder);
+				if (mAddToFolder)
+					Toast.makeText(v.getContext(), R.string.folder_select, Toast.LENGTH_SHORT).show();
+				break;
+
+			case R.id.cancel:
+				dismiss();
+				break;
+		}
+	}
+}
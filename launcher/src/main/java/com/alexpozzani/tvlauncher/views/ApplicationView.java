@@ -18,40 +18,71 @@
 package com.alexpozzani.tvlauncher.views;
 
 import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.drawable.Drawable;
-import android.graphics.drawable.GradientDrawable;
-import android.graphics.drawable.StateListDrawable;
 import android.os.Build;
 import android.support.annotation.DrawableRes;
+import android.support.annotation.NonNull;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.util.StateSet;
 import android.view.KeyEvent;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import com.alexpozzani.tvlauncher.Folder;
 import com.alexpozzani.tvlauncher.R;
-import com.alexpozzani.tvlauncher.Setup;
+import com.alexpozzani.tvlauncher.Utils;
 
 import java.util.Locale;
 
 import static android.content.ContentValues.TAG;
 
 public class ApplicationView extends LinearLayout {
+	private static final int LABEL_MARGIN_DP = 10;
+	private static final int CONTENT_PADDING_DP = 5;
+
 	private OnClickListener mMenuClickListener;
 	private ImageView mIcon;
 	private TextView mText;
 	private String mPackageName;
+	private Folder mFolder;
 	private int mPosition;
 
+	// flat mode : no child view, icon and label are drawn by the tile itself
+	private boolean mFlat = false;
+	private Drawable mIconDrawable;
+	private CharSequence mLabel = "";
+	private StaticLayout mLabelLayout;
+	private TextPaint mLabelPaint;
+	private ColorStateList mLabelColors;
+	private boolean mShowName = true;
+	private int mIconSize;
+	private int mLabelMargin;
+	private int mContentPadding;
+
 	public ApplicationView(Context context) {
 		super(context);
 		initialize(context, null, null);
 	}
 
+	/**
+	 * @param flat draw the icon and the label in this view instead of inflating R.layout.application,
+	 *             a single view to measure, layout and draw per tile
+	 */
+	public ApplicationView(Context context, boolean flat) {
+		super(context);
+		mFlat = flat;
+		initialize(context, null, null);
+	}
+
 	public ApplicationView(Context context, AttributeSet attrs) {
 		super(context, attrs);
 		initialize(context, attrs, null);
@@ -66,17 +97,6 @@ public class ApplicationView extends LinearLayout {
 		return (String.format(Locale.getDefault(), "application_%02d", appNum));
 	}
 
-	private static Drawable createTileShape(int backgroundColor, int borderColor) {
-		GradientDrawable shape = new GradientDrawable();
-		shape.setShape(GradientDrawable.RECTANGLE);
-		shape.setCornerRadii(new float[]{7, 7, 7, 7, 0, 0, 0, 0});
-		shape.setColor(backgroundColor);
-		shape.setStroke(1, borderColor);
-		shape.setBounds(7, 7, 7, 7);
-		return (shape);
-	}
-
-
 	@Override
 	public boolean onKeyDown(int keyCode, KeyEvent event) {
 		Log.d(TAG, "keyCode => " + keyCode);
@@ -93,75 +113,197 @@ public class ApplicationView extends LinearLayout {
 		mMenuClickListener = clickListener;
 	}
 
-	private void setBackgroundStateDrawable(float transparency) {
-		StateListDrawable stateListDrawable = new StateListDrawable();
+	@SuppressWarnings("UnusedParameters")
+	private void initialize(Context context, AttributeSet attrs, Integer defStyle) {
+		if (mFlat)
+			initializeFlat(context);
+		else
+			inflate(context, R.layout.application, this);
 
-		Drawable drawableEnabled = createTileShape(
-				Color.argb(getTransparency(transparency, 0.0F), 0xF0, 0xF0, 0xF0),
-				Color.argb(0xFF, 0x90, 0x90, 0x90)
-		);
-		Drawable drawableFocused = createTileShape(
-				Color.argb(getTransparency(transparency, 0.4F), 0xE0, 0xE0, 0xFF),
-				Color.argb(0xFF, 0x90, 0x90, 0x90)
-		);
-		Drawable drawablePressed = createTileShape(
-				Color.argb(getTransparency(transparency, 0.8F), 0xE0, 0xE0, 0xFF),
-				Color.argb(0xFF, 0x00, 0x00, 0x00)
-		);
+		setClickable(true);
+		setFocusable(true);
 
-		stateListDrawable.addState(new int[]{android.R.attr.state_pressed}, drawablePressed);
-		stateListDrawable.addState(new int[]{android.R.attr.state_focused}, drawableFocused);
-		stateListDrawable.addState(new int[]{android.R.attr.state_hovered}, drawableFocused);
-		stateListDrawable.addState(StateSet.WILD_CARD, drawableEnabled);
+		refreshBackground();
 
-		setBackground(stateListDrawable);
+		mIcon = (ImageView) findViewById(R.id.application_icon);
+		mText = (TextView) findViewById(R.id.application_name);
 	}
 
-	private int getTransparency(float transparency, float add) {
-		int trans = (int) ((transparency + add) * 255.0);
-		if (trans > 255)
-			return (255);
-		if (trans < 0)
-			return (0);
-		return (trans);
+	/**
+	 * Apply the current shared tile background, after a transparency change.
+	 */
+	public void refreshBackground() {
+		setBackground(TileBackgrounds.getInstance(getContext()).newBackground(getContext()));
 	}
 
-	@SuppressWarnings("UnusedParameters")
-	private void initialize(Context context, AttributeSet attrs, Integer defStyle) {
-		Setup setup = new Setup(context);
+	/**
+	 * Same metrics as R.layout.application : centered icon, label below in the
+	 * {@code ApplicationLabel} style, one line.
+	 */
+	private void initializeFlat(Context context) {
+		setWillNotDraw(false);
+
+		mIconSize = getResources().getDimensionPixelSize(R.dimen.application_drawable_size);
+		mLabelMargin = Utils.getPixelFromDp(context, LABEL_MARGIN_DP);
+		mContentPadding = Utils.getPixelFromDp(context, CONTENT_PADDING_DP);
+
+		mLabelPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+
+		// same style as the label of R.layout.application, attributes must be sorted :
+		// textAppearance (0x01010034) then shadowColor, shadowDx, shadowDy, shadowRadius (0x01010161-4)
+		TypedArray label = context.obtainStyledAttributes(R.style.ApplicationLabel, new int[]{
+				android.R.attr.textAppearance, android.R.attr.shadowColor, android.R.attr.shadowDx,
+				android.R.attr.shadowDy, android.R.attr.shadowRadius});
+		int appearance = label.getResourceId(0, 0);
+		mLabelPaint.setShadowLayer(label.getFloat(4, 0), label.getFloat(2, 0), label.getFloat(3, 0),
+				label.getColor(1, Color.TRANSPARENT));
+		label.recycle();
+
+		// textSize (0x01010095) then textColor (0x01010098)
+		TypedArray a = context.obtainStyledAttributes(appearance,
+				new int[]{android.R.attr.textSize, android.R.attr.textColor});
+		mLabelPaint.setTextSize(a.getDimension(0, Utils.getPixelFromDp(context, 14)));
+		mLabelColors = a.getColorStateList(1);
+		a.recycle();
+
+		if (mLabelColors == null)
+			mLabelColors = ColorStateList.valueOf(Color.WHITE);
+		mIconDrawable = context.getDrawable(R.drawable.ic_add);
+	}
 
-		inflate(context, R.layout.application, this);
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		if (mFlat) {
+			mLabelLayout = null;
+			updateIconBounds();
+		}
+	}
 
-		setClickable(true);
-		setFocusable(true);
+	@Override
+	protected void drawableStateChanged() {
+		super.drawableStateChanged();
+		if (mFlat) {
+			if (mIconDrawable != null && mIconDrawable.isStateful())
+				mIconDrawable.setState(getDrawableState());
+			invalidate();
+		}
+	}
 
-		if (!setup.isDefaultTransparency()) {
-			setBackgroundStateDrawable(setup.getTransparency());
-		} else {
-			setBackgroundResource(R.drawable.application_selector);
+	@Override
+	protected boolean verifyDrawable(@NonNull Drawable who) {
+		return (super.verifyDrawable(who) || (mFlat && who == mIconDrawable));
+	}
+
+	private int getContentTop() {
+		int contentHeight = mIconSize;
+		if (mShowName)
+			contentHeight += mLabelMargin + getLabelLayout().getHeight();
+
+		int top = getPaddingTop() + mContentPadding;
+		int bottom = getHeight() - getPaddingBottom() - mContentPadding;
+		return (top + (bottom - top - contentHeight) / 2);
+	}
+
+	private StaticLayout getLabelLayout() {
+		if (mLabelLayout == null) {
+			int width = Math.max(0, getWidth() - getPaddingLeft() - getPaddingRight());
+			mLabelLayout = StaticLayout.Builder.obtain(mLabel, 0, mLabel.length(), mLabelPaint, width)
+					.setAlignment(Layout.Alignment.ALIGN_CENTER)
+					.setMaxLines(1)
+					.setEllipsize(TextUtils.TruncateAt.END)
+					.setEllipsizedWidth(width)
+					.setIncludePad(true)
+					.build();
+		}
+		return (mLabelLayout);
+	}
+
+	private void updateIconBounds() {
+		if (mIconDrawable == null || getWidth() == 0)
+			return;
+
+		// fit center in the icon square, like the ImageView default scale type
+		int width = mIconDrawable.getIntrinsicWidth();
+		int height = mIconDrawable.getIntrinsicHeight();
+		if (width <= 0 || height <= 0) {
+			width = mIconSize;
+			height = mIconSize;
 		}
+		float scale = Math.min((float) mIconSize / width, (float) mIconSize / height);
+		width = (int) (width * scale);
+		height = (int) (height * scale);
 
-		mIcon = (ImageView) findViewById(R.id.application_icon);
-		mText = (TextView) findViewById(R.id.application_name);
+		int left = getPaddingLeft() + (getWidth() - getPaddingLeft() - getPaddingRight() - width) / 2;
+		int top = getContentTop() + (mIconSize - height) / 2;
+		mIconDrawable.setBounds(left, top, left + width, top + height);
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+		if (!mFlat)
+			return;
+
+		if (mIconDrawable != null)
+			mIconDrawable.draw(canvas);
+
+		if (mShowName && mLabel.length() > 0) {
+			StaticLayout layout = getLabelLayout();
+			mLabelPaint.setColor(mLabelColors.getColorForState(getDrawableState(), mLabelColors.getDefaultColor()));
+
+			canvas.save();
+			canvas.translate(getPaddingLeft(), getContentTop() + mIconSize + mLabelMargin);
+			layout.draw(canvas);
+			canvas.restore();
+		}
 	}
 
 	@SuppressWarnings("SameParameterValue")
 	public ApplicationView setImageResource(@DrawableRes int res) {
+		if (mFlat)
+			return (setImageDrawable(getContext().getDrawable(res)));
 		mIcon.setImageResource(res);
 		return (this);
 	}
 
 	public ApplicationView setImageDrawable(Drawable drawable) {
+		if (mFlat) {
+			if (mIconDrawable != null)
+				mIconDrawable.setCallback(null);
+			mIconDrawable = drawable;
+			if (drawable != null) {
+				drawable.setCallback(this);
+				if (drawable.isStateful())
+					drawable.setState(getDrawableState());
+			}
+			updateIconBounds();
+			invalidate();
+			return (this);
+		}
 		mIcon.setImageDrawable(drawable);
 		return (this);
 	}
 
 	public ApplicationView setText(CharSequence text) {
-		mText.setText(text);
+		mLabel = text != null ? text : "";
+		if (mFlat) {
+			mLabelLayout = null;
+			updateIconBounds();
+			invalidate();
+			return (this);
+		}
+		LabelPrecomputer.setText(mText, mLabel);
 		return (this);
 	}
 
 	public void showName(boolean show) {
+		if (mFlat) {
+			mShowName = show;
+			updateIconBounds();
+			invalidate();
+			return;
+		}
 		mText.setVisibility(
 				show ? VISIBLE : GONE
 		);
@@ -177,8 +319,23 @@ public class ApplicationView extends LinearLayout {
 		return (this);
 	}
 
+	public Folder getFolder() {
+		return mFolder;
+	}
+
+	@SuppressWarnings("UnusedReturnValue")
+	public ApplicationView setFolder(Folder folder) {
+		mFolder = folder;
+		return (this);
+	}
+
+	public boolean isFolder() {
+		return (mFolder != null);
+	}
+
 	public String getName() {
-		return mText.getText().toString();
+		// the text view may still wait for its precomputed label
+		return mLabel.toString();
 	}
 
 	public boolean hasPackage() {
@@ -0,0 +1,215 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher.views;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.alexpozzani.tvlauncher.DeviceProfile;
+import com.alexpozzani.tvlauncher.Folder;
+import com.alexpozzani.tvlauncher.PackageIndex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Composite icon of a folder tile, made of the first icons of the folder.
+ * A preview is rendered once, then served from memory or from the cache directory,
+ * so a folder tile costs a single bitmap decode like a plain application tile.
+ * Previews are keyed by the folder packages and their indexed version codes, an updated member
+ * gets a new preview. Only {@link #peekPreview} may be called on the main thread.
+ */
+public class FolderPreview {
+	private static final String TAG = "FolderPreview";
+	private static final String CACHE_DIRECTORY = "folders";
+	private static final int PREVIEW_SIZE = 192;
+	private static final int PREVIEW_COLUMNS = 2;
+	private static final int PREVIEW_ICONS = PREVIEW_COLUMNS * PREVIEW_COLUMNS;
+
+	private static final LruCache<String, Bitmap> sPreviews = new LruCache<String, Bitmap>(4 * 1024 * 1024) {
+		@Override
+		protected int sizeOf(String key, Bitmap value) {
+			return (value.getByteCount());
+		}
+	};
+
+	/**
+	 * @return the preview if it is in memory, null otherwise
+	 */
+	public static Drawable peekPreview(Context context, Folder folder) {
+		Bitmap preview = sPreviews.get(getKey(context, folder));
+		if (preview == null)
+			return (null);
+		return (new BitmapDrawable(context.getResources(), preview));
+	}
+
+	/**
+	 * Decode, or render and save, the preview on the calling thread.
+	 */
+	public static Drawable getPreview(Context context, Folder folder) {
+		int budget = DeviceProfile.getInstance(context).getPreviewCacheSize();
+		if (sPreviews.maxSize() != budget)
+			sPreviews.resize(budget);
+
+		String key = getKey(context, folder);
+		Bitmap preview = sPreviews.get(key);
+
+		if (preview == null) {
+			File file = getCacheFile(context, key);
+			if (file.exists())
+				preview = BitmapFactory.decodeFile(file.getPath());
+			if (preview == null) {
+				preview = render(context, folder);
+				save(file, preview);
+			}
+			sPreviews.put(key, preview);
+		}
+		return (new BitmapDrawable(context.getResources(), preview));
+	}
+
+	/**
+	 * Render and save the preview if it is not in the cache directory, without keeping it in memory.
+	 *
+	 * @return true if the preview was rendered
+	 */
+	public static boolean prerender(Context context, Folder folder) {
+		File file = getCacheFile(context, getKey(context, folder));
+		if (file.exists())
+			return (false);
+
+		save(file, render(context, folder));
+		return (true);
+	}
+
+	/**
+	 * Delete the preview files of folders which are not in the grid any more
+	 * or were rendered from other versions of their packages.
+	 *
+	 * @param folders folders in the grid
+	 * @return the number of deleted files
+	 */
+	public static int removeStalePreviews(Context context, Collection<Folder> folders) {
+		File[] files = new File(context.getCacheDir(), CACHE_DIRECTORY).listFiles();
+		Set<String> names = new HashSet<>();
+		int removed = 0;
+
+		if (files == null)
+			return (0);
+
+		for (Folder folder : folders) {
+			names.add(getCacheFile(context, getKey(context, folder)).getName());
+		}
+		for (File file : files) {
+			if (!names.contains(file.getName()) && file.delete())
+				removed++;
+		}
+		return (removed);
+	}
+
+	/**
+	 * Drop the previews from memory, previews shown by a tile stay referenced by the tile.
+	 */
+	public static void trimMemory() {
+		sPreviews.evictAll();
+	}
+
+	/**
+	 * Tiles are keyed on bind, the key is only read from the {@link PackageIndex} : a package
+	 * it does not know has no version until the index is verified again.
+	 *
+	 * @return the folder packages and their indexed version codes
+	 */
+	public static String getKey(Context context, Folder folder) {
+		PackageIndex index = PackageIndex.getInstance(context);
+		StringBuilder key = new StringBuilder();
+
+		for (String packageName : folder.getPackages()) {
+			PackageIndex.Entry entry = index.get(packageName);
+			key.append(packageName).append('_').append(entry != null ? entry.getVersionCode() : -1).append(';');
+		}
+		return (key.toString());
+	}
+
+	private static Bitmap render(Context context, Folder folder) {
+		PackageManager pm = context.getPackageManager();
+		Bitmap preview = Bitmap.createBitmap(PREVIEW_SIZE, PREVIEW_SIZE, Bitmap.Config.ARGB_8888);
+		Canvas canvas = new Canvas(preview);
+		List<String> packages = folder.getPackages();
+		int cell = PREVIEW_SIZE / PREVIEW_COLUMNS;
+		int padding = cell / 10;
+		int drawn = 0;
+
+		for (int i = 0; i < packages.size() && drawn < PREVIEW_ICONS; i++) {
+			try {
+				Drawable icon = pm.getApplicationIcon(packages.get(i));
+				int left = (drawn % PREVIEW_COLUMNS) * cell;
+				int top = (drawn / PREVIEW_COLUMNS) * cell;
+
+				icon.setBounds(left + padding, top + padding, left + cell - padding, top + cell - padding);
+				icon.draw(canvas);
+				drawn++;
+			} catch (PackageManager.NameNotFoundException e) {
+				Log.w(TAG, "render: " + packages.get(i) + " not found");
+			}
+		}
+		return (preview);
+	}
+
+	private static void save(File file, Bitmap preview) {
+		File directory = file.getParentFile();
+		if (directory != null && !directory.exists() && !directory.mkdirs())
+			return;
+
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			preview.compress(Bitmap.CompressFormat.PNG, 100, out);
+		} catch (IOException e) {
+			Log.e(TAG, "save: " + file, e);
+		}
+	}
+
+	private static File getCacheFile(Context context, String key) {
+		return (new File(new File(context.getCacheDir(), CACHE_DIRECTORY), getHash(key) + ".png"));
+	}
+
+	private static String getHash(String key) {
+		try {
+			StringBuilder hash = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8))) {
+				hash.append(String.format("%02x", b));
+			}
+			return (hash.toString());
+		} catch (NoSuchAlgorithmException e) {
+			return (Integer.toHexString(key.hashCode()));
+		}
+	}
+}
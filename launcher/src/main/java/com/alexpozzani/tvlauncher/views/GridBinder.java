@@ -0,0 +1,76 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher.views;
+
+import com.alexpozzani.tvlauncher.AppInfo;
+import com.alexpozzani.tvlauncher.GridModel;
+import com.alexpozzani.tvlauncher.LabelCache;
+import com.alexpozzani.tvlauncher.R;
+
+import java.io.PrintWriter;
+
+/**
+ * Bind grid slots to tiles, only when the tile shows something else.
+ * <p>
+ * Each tile remembers the key of the slot it was bound to (value, version code and cached label,
+ * or the folder preview key), a slot with the same key is skipped. New tiles have no key
+ * and are always bound. Keys never load a label or query the package manager, a label loaded
+ * again for new locales rebinds through {@link LabelCache#ACTION_LABELS_CHANGED}.
+ */
+public class GridBinder {
+	private long mPerformed;
+	private long mSkipped;
+
+	public interface Binder {
+		void bind(ApplicationView view, GridModel.Slot slot);
+	}
+
+	/**
+	 * @return true if the tile was bound, false if it already showed the slot
+	 */
+	public boolean bind(ApplicationView view, GridModel.Slot slot, Binder binder) {
+		String key = getKey(view, slot);
+
+		if (key.equals(view.getTag(R.id.bound_slot))) {
+			mSkipped++;
+			return (false);
+		}
+
+		binder.bind(view, slot);
+		// the bind may have loaded and cached the label
+		view.setTag(R.id.bound_slot, getKey(view, slot));
+		mPerformed++;
+		return (true);
+	}
+
+	private static String getKey(ApplicationView view, GridModel.Slot slot) {
+		AppInfo appInfo = slot.getAppInfo();
+
+		if (appInfo != null)
+			return (appInfo.getPackageName() + "|" + appInfo.getVersionCode() + "|" + LabelCache.getInstance(view.getContext())
+					.peekLabel(appInfo.getPackageName(), appInfo.getActivityName(), appInfo.getVersionCode()));
+		if (slot.getFolder() != null)
+			return (FolderPreview.getKey(view.getContext(), slot.getFolder()));
+		return ("");
+	}
+
+	public void dump(String prefix, PrintWriter writer) {
+		writer.print(prefix);
+		writer.println("Tile binds: " + mPerformed + " performed, " + mSkipped + " skipped");
+	}
+}
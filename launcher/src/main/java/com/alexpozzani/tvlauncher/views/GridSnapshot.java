@@ -0,0 +1,247 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher.views;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+import android.util.StateSet;
+import android.view.View;
+
+import com.alexpozzani.tvlauncher.AppInfo;
+import com.alexpozzani.tvlauncher.GridModel;
+import com.alexpozzani.tvlauncher.IconCache;
+import com.alexpozzani.tvlauncher.Setup;
+import com.alexpozzani.tvlauncher.activities.Preferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Downscaled picture of the last fully bound grid, shown while the live tiles are built.
+ * <p>
+ * The picture is saved with the state it was taken from : grid size, tile settings, and the
+ * value, rendered icon and label of each slot. It is only shown again when none of them changed
+ * since, an icon update or a new tile setting gets a new picture.
+ */
+public class GridSnapshot {
+	private static final String TAG = "GridSnapshot";
+	private static final String IMAGE_FILE = "grid_snapshot.png";
+	private static final String MAPPING_FILE = "grid_snapshot.json";
+	private static final float SCALE = 0.5F;
+
+	private static final String KEY_GRID_X = "grid_x";
+	private static final String KEY_GRID_Y = "grid_y";
+	private static final String KEY_STYLE = "style";
+	private static final String KEY_SLOTS = "slots";
+	private static final String KEY_VALUE = "value";
+	private static final String KEY_ICON = "icon";
+	private static final String KEY_LABEL = "label";
+
+	/**
+	 * State of the grid a picture depends on, without the labels which are only known once bound.
+	 *
+	 * @return null if the state can not be built
+	 */
+	public static JSONObject getState(Context context, int gridX, int gridY) {
+		GridModel model = GridModel.getInstance(context);
+		Setup setup = new Setup(context);
+
+		try {
+			JSONObject state = new JSONObject();
+			JSONObject style = new JSONObject();
+			JSONArray slotsArray = new JSONArray();
+
+			style.put(Preferences.PREFERENCE_MARGIN_X, setup.getMarginX());
+			style.put(Preferences.PREFERENCE_MARGIN_Y, setup.getMarginY());
+			style.put(Preferences.PREFERENCE_DEFAULT_TRANSPARENCY, setup.isDefaultTransparency());
+			style.put(Preferences.PREFERENCE_TRANSPARENCY, String.valueOf(setup.getTransparency()));
+			style.put(Preferences.PREFERENCE_SHOW_NAME, setup.showNames());
+			style.put(Preferences.PREFERENCE_FLAT_TILES, setup.flatTiles());
+
+			state.put(KEY_GRID_X, gridX);
+			state.put(KEY_GRID_Y, gridY);
+			state.put(KEY_STYLE, style);
+			for (int i = 0; i < gridX * gridY; i++) {
+				GridModel.Slot slot = model.getSlot(i);
+				JSONObject slotObject = new JSONObject();
+				slotObject.put(KEY_VALUE, slot.getValue() != null ? slot.getValue() : "");
+				slotObject.put(KEY_ICON, getIconKey(context, slot));
+				slotsArray.put(slotObject);
+			}
+			state.put(KEY_SLOTS, slotsArray);
+			return (state);
+		} catch (JSONException e) {
+			Log.e(TAG, "getState", e);
+			return (null);
+		}
+	}
+
+	/**
+	 * @return the cache key of the icon the slot tile shows, empty for an empty slot
+	 */
+	private static String getIconKey(Context context, GridModel.Slot slot) {
+		AppInfo appInfo = slot.getAppInfo();
+
+		if (appInfo != null)
+			return (IconCache.getInstance(context).getIconKey(appInfo.getPackageName(), appInfo.getVersionCode()));
+		if (slot.getFolder() != null)
+			return (FolderPreview.getKey(context, slot.getFolder()));
+		return ("");
+	}
+
+	/**
+	 * @return the saved snapshot when it was taken from the same state, null otherwise
+	 */
+	public static Bitmap load(Context context, JSONObject state) {
+		JSONObject mapping = readMapping(context);
+		if (mapping == null || !matches(mapping, state))
+			return (null);
+		return (BitmapFactory.decodeFile(new File(context.getCacheDir(), IMAGE_FILE).getPath()));
+	}
+
+	/**
+	 * Delete the saved snapshot when it was taken from another state.
+	 *
+	 * @return true if a snapshot was deleted
+	 */
+	public static boolean removeIfStale(Context context, JSONObject state) {
+		JSONObject mapping = readMapping(context);
+		File image = new File(context.getCacheDir(), IMAGE_FILE);
+
+		if (!image.exists() || (mapping != null && matches(mapping, state)))
+			return (false);
+
+		new File(context.getCacheDir(), MAPPING_FILE).delete();
+		return (image.delete());
+	}
+
+	/**
+	 * Draw the view in a downscaled bitmap, must be called on the main thread once the view is laid out.
+	 * The focused descendant is drawn with its unfocused background, the picture does not depend on the focus.
+	 */
+	public static Bitmap capture(View view) {
+		int width = (int) (view.getWidth() * SCALE);
+		int height = (int) (view.getHeight() * SCALE);
+		if (width <= 0 || height <= 0)
+			return (null);
+
+		Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		Canvas canvas = new Canvas(bitmap);
+		View focused = view.findFocus();
+		Drawable background = focused != null ? focused.getBackground() : null;
+		int[] state = background != null ? background.getState() : null;
+
+		if (background != null) {
+			background.setState(StateSet.NOTHING);
+			background.jumpToCurrentState();
+		}
+		canvas.scale(SCALE, SCALE);
+		view.draw(canvas);
+		if (background != null) {
+			background.setState(state);
+			background.jumpToCurrentState();
+		}
+		return (bitmap);
+	}
+
+	/**
+	 * Write the snapshot with its state and labels, can be called from a background thread.
+	 * Nothing is written when the state and labels did not change since the last snapshot.
+	 *
+	 * @param state  state of the grid when the picture was taken, from {@link #getState(Context, int, int)}
+	 * @param labels label of each slot tile
+	 */
+	public static void save(Context context, Bitmap bitmap, JSONObject state, String[] labels) {
+		JSONObject previous = readMapping(context);
+		try {
+			JSONObject mapping = new JSONObject(state.toString());
+			JSONArray slotsArray = mapping.getJSONArray(KEY_SLOTS);
+
+			for (int i = 0; i < slotsArray.length() && i < labels.length; i++) {
+				slotsArray.getJSONObject(i).put(KEY_LABEL, labels[i] != null ? labels[i] : "");
+			}
+
+			if (previous != null && previous.toString().equals(mapping.toString()))
+				return;
+
+			try (OutputStream out = new FileOutputStream(new File(context.getCacheDir(), IMAGE_FILE))) {
+				bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+			}
+			try (OutputStream out = new FileOutputStream(new File(context.getCacheDir(), MAPPING_FILE))) {
+				out.write(mapping.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		} catch (IOException | JSONException e) {
+			Log.e(TAG, "save", e);
+		}
+	}
+
+	private static boolean matches(JSONObject mapping, JSONObject state) {
+		if (state == null)
+			return (false);
+
+		JSONArray slotsArray = mapping.optJSONArray(KEY_SLOTS);
+		JSONArray stateSlots = state.optJSONArray(KEY_SLOTS);
+		JSONObject style = mapping.optJSONObject(KEY_STYLE);
+
+		if (mapping.optInt(KEY_GRID_X) != state.optInt(KEY_GRID_X) || mapping.optInt(KEY_GRID_Y) != state.optInt(KEY_GRID_Y)
+				|| style == null || !style.toString().equals(state.optJSONObject(KEY_STYLE).toString())
+				|| slotsArray == null || stateSlots == null || slotsArray.length() != stateSlots.length())
+			return (false);
+
+		for (int i = 0; i < stateSlots.length(); i++) {
+			JSONObject slot = slotsArray.optJSONObject(i);
+			JSONObject stateSlot = stateSlots.optJSONObject(i);
+			if (slot == null || !stateSlot.optString(KEY_VALUE).equals(slot.optString(KEY_VALUE))
+					|| !stateSlot.optString(KEY_ICON).equals(slot.optString(KEY_ICON)))
+				return (false);
+		}
+		return (true);
+	}
+
+	private static JSONObject readMapping(Context context) {
+		File file = new File(context.getCacheDir(), MAPPING_FILE);
+		if (!file.exists())
+			return (null);
+
+		try (InputStream in = new FileInputStream(file)) {
+			byte[] content = new byte[(int) file.length()];
+			int offset = 0;
+			int count;
+			while (offset < content.length && (count = in.read(content, offset, content.length - offset)) > 0) {
+				offset += count;
+			}
+			return (new JSONObject(new String(content, StandardCharsets.UTF_8)));
+		} catch (IOException | JSONException e) {
+			Log.e(TAG, "readMapping", e);
+			return (null);
+		}
+	}
+}
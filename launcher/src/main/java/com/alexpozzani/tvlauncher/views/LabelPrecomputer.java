@@ -0,0 +1,133 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher.views;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.RequiresApi;
+import android.text.PrecomputedText;
+import android.text.TextUtils;
+import android.util.LruCache;
+import android.widget.TextView;
+
+import com.alexpozzani.tvlauncher.R;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Measure application labels off the main thread.
+ * <p>
+ * On Android P and above labels are turned into {@link PrecomputedText} for the text view metrics,
+ * the text view still does the layout, so the one line limit truncates the label as before.
+ * A label is only applied if the view is still bound to it when the measure is done,
+ * the plain label is shown meanwhile. Before P the text view has no way to take a measure
+ * done elsewhere, labels are set as they are.
+ */
+public class LabelPrecomputer {
+	private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+	private static final Handler sHandler = new Handler(Looper.getMainLooper());
+	private static final LruCache<String, CharSequence> sLabels = new LruCache<>(512);
+
+	public static void setText(final TextView view, final CharSequence text) {
+		if (text == null || text.length() == 0 || Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+			view.setTag(R.id.precomputed_label, null);
+			view.setText(text);
+			return;
+		}
+
+		final Object params = getParams(view);
+		final String key = getKey(text, params);
+		CharSequence label = sLabels.get(key);
+
+		view.setTag(R.id.precomputed_label, key);
+		if (label != null) {
+			apply(view, label);
+			return;
+		}
+
+		// the label stays shown until the measured one is applied : a rebound view keeps its text,
+		// a recycled one gets the plain string
+		if (!TextUtils.equals(view.getText().toString(), text.toString()))
+			view.setText(text.toString());
+		sExecutor.execute(() -> {
+			final CharSequence computed = precompute(text, params);
+			sLabels.put(key, computed);
+			sHandler.post(() -> {
+				if (key.equals(view.getTag(R.id.precomputed_label)))
+					apply(view, computed);
+			});
+		});
+	}
+
+	@RequiresApi(Build.VERSION_CODES.P)
+	private static void apply(TextView view, CharSequence label) {
+		// a precomputed text is only accepted by a view with the same metrics
+		if (label instanceof PrecomputedText && !((PrecomputedText) label).getParams().equals(view.getTextMetricsParams()))
+			view.setText(label.toString());
+		else
+			view.setText(label);
+	}
+
+	/**
+	 * Measure labels in background before they are bound, with the metrics of the given view.
+	 */
+	public static void prefetch(TextView view, List<? extends CharSequence> texts) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P)
+			return;
+
+		final Object params = getParams(view);
+
+		for (final CharSequence text : texts) {
+			if (text == null || text.length() == 0)
+				continue;
+
+			final String key = getKey(text, params);
+			if (sLabels.get(key) != null)
+				continue;
+
+			sExecutor.execute(() -> {
+				if (sLabels.get(key) == null)
+					sLabels.put(key, precompute(text, params));
+			});
+		}
+	}
+
+	/**
+	 * Drop the measured labels, labels bound to a view stay referenced by the view.
+	 */
+	public static void trimMemory() {
+		sLabels.evictAll();
+	}
+
+	@RequiresApi(Build.VERSION_CODES.P)
+	private static Object getParams(TextView view) {
+		return (view.getTextMetricsParams());
+	}
+
+	private static String getKey(CharSequence text, Object params) {
+		return (text + "|" + params.hashCode());
+	}
+
+	@RequiresApi(Build.VERSION_CODES.P)
+	private static CharSequence precompute(CharSequence text, Object params) {
+		return (PrecomputedText.create(text, (PrecomputedText.Params) params));
+	}
+}
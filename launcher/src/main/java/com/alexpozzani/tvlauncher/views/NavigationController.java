@@ -0,0 +1,157 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher.views;
+
+import android.view.Choreographer;
+import android.view.KeyEvent;
+import android.view.SoundEffectConstants;
+import android.view.View;
+import android.widget.AbsListView;
+
+import java.io.PrintWriter;
+
+/**
+ * D-pad navigation for held direction keys.
+ * <p>
+ * The first press is left to the framework. Repeat events are counted and applied once per frame :
+ * the focus walks the same focus search as single presses, but only the final target is focused,
+ * so the tiles passed through do not change state. The longer the key is held, the more steps
+ * each repeat counts. Lists and grids move their selection by the same count with
+ * {@link View#onKeyMultiple(int, int, KeyEvent)}.
+ */
+public class NavigationController implements Choreographer.FrameCallback {
+	private static final long ACCELERATION_DELAY_MS = 800;
+	private static final long ACCELERATION_STEP_MS = 600;
+	private static final int MAX_STEPS_PER_REPEAT = 4;
+
+	private final View mRoot;
+	private KeyEvent mPendingEvent;
+	private int mPendingSteps = 0;
+	private boolean mFramePosted = false;
+	private long mRepeats;
+	private long mFrames;
+
+	public NavigationController(View root) {
+		mRoot = root;
+	}
+
+	/**
+	 * @return true if the event was consumed, false if the framework should handle it
+	 */
+	public boolean dispatchKeyEvent(KeyEvent event) {
+		int direction = getDirection(event.getKeyCode());
+		if (direction == 0)
+			return (false);
+
+		if (mPendingEvent != null && mPendingEvent.getKeyCode() != event.getKeyCode())
+			flush();
+
+		if (event.getAction() == KeyEvent.ACTION_UP) {
+			flush();
+			return (false);
+		}
+		if (event.getAction() != KeyEvent.ACTION_DOWN || event.getRepeatCount() == 0)
+			return (false);
+
+		mRepeats++;
+		// the framework recycles dispatched events
+		mPendingEvent = new KeyEvent(event);
+		mPendingSteps += getSteps(event);
+		if (!mFramePosted) {
+			mFramePosted = true;
+			Choreographer.getInstance().postFrameCallback(this);
+		}
+		return (true);
+	}
+
+	/**
+	 * Drop the pending steps, when the window loses focus.
+	 */
+	public void cancel() {
+		if (mFramePosted)
+			Choreographer.getInstance().removeFrameCallback(this);
+		mFramePosted = false;
+		mPendingEvent = null;
+		mPendingSteps = 0;
+	}
+
+	@Override
+	public void doFrame(long frameTimeNanos) {
+		mFramePosted = false;
+		flush();
+	}
+
+	private void flush() {
+		KeyEvent event = mPendingEvent;
+		int steps = mPendingSteps;
+
+		cancel();
+		if (event == null || steps == 0)
+			return;
+		mFrames++;
+
+		View focused = mRoot.findFocus();
+		if (focused == null)
+			return;
+
+		if (focused instanceof AbsListView) {
+			focused.onKeyMultiple(event.getKeyCode(), steps, event);
+			return;
+		}
+
+		int direction = getDirection(event.getKeyCode());
+		View target = focused;
+		for (int i = 0; i < steps; i++) {
+			View next = target.focusSearch(direction);
+			if (next == null || next == focused)
+				break;
+			target = next;
+		}
+		if (target != focused) {
+			target.requestFocus(direction);
+			target.playSoundEffect(SoundEffectConstants.getContantForFocusDirection(direction));
+		}
+	}
+
+	private static int getSteps(KeyEvent event) {
+		long held = event.getEventTime() - event.getDownTime();
+		if (held < ACCELERATION_DELAY_MS)
+			return (1);
+		return ((int) Math.min(MAX_STEPS_PER_REPEAT, 2 + (held - ACCELERATION_DELAY_MS) / ACCELERATION_STEP_MS));
+	}
+
+	private static int getDirection(int keyCode) {
+		switch (keyCode) {
+			case KeyEvent.KEYCODE_DPAD_LEFT:
+				return (View.FOCUS_LEFT);
+			case KeyEvent.KEYCODE_DPAD_RIGHT:
+				return (View.FOCUS_RIGHT);
+			case KeyEvent.KEYCODE_DPAD_UP:
+				return (View.FOCUS_UP);
+			case KeyEvent.KEYCODE_DPAD_DOWN:
+				return (View.FOCUS_DOWN);
+			default:
+				return (0);
+		}
+	}
+
+	public void dump(String prefix, PrintWriter writer) {
+		writer.print(prefix);
+		writer.println("Key repeats: " + mRepeats + " coalesced in " + mFrames + " frames");
+	}
+}
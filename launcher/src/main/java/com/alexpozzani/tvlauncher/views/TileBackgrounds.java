@@ -0,0 +1,122 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher.views;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import android.graphics.drawable.StateListDrawable;
+import android.util.StateSet;
+
+import com.alexpozzani.tvlauncher.R;
+import com.alexpozzani.tvlauncher.Setup;
+
+/**
+ * Factory of the tile state backgrounds.
+ * <p>
+ * The custom transparency background is built once for the current transparency value,
+ * every tile then gets its own copy from the shared constant state.
+ */
+public class TileBackgrounds {
+	private static TileBackgrounds sInstance;
+
+	private boolean mDefaultTransparency;
+	private float mTransparency;
+	private Drawable.ConstantState mState;
+
+	private TileBackgrounds() {
+	}
+
+	public static synchronized TileBackgrounds getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new TileBackgrounds();
+			sInstance.reload(context);
+		}
+		return (sInstance);
+	}
+
+	/**
+	 * Read the transparency settings again and swap the shared background when they changed.
+	 *
+	 * @return true if tiles have to refresh their background
+	 */
+	public synchronized boolean reload(Context context) {
+		Setup setup = new Setup(context);
+		boolean defaultTransparency = setup.isDefaultTransparency();
+		float transparency = setup.getTransparency();
+
+		if (mState != null && defaultTransparency == mDefaultTransparency
+				&& (defaultTransparency || transparency == mTransparency))
+			return (false);
+
+		mDefaultTransparency = defaultTransparency;
+		mTransparency = transparency;
+		mState = defaultTransparency ?
+				context.getDrawable(R.drawable.application_selector).getConstantState() :
+				createStateDrawable(transparency).getConstantState();
+		return (true);
+	}
+
+	public synchronized Drawable newBackground(Context context) {
+		return (mState.newDrawable(context.getResources()));
+	}
+
+	private static Drawable createStateDrawable(float transparency) {
+		StateListDrawable stateListDrawable = new StateListDrawable();
+
+		Drawable drawableEnabled = createTileShape(
+				Color.argb(getTransparency(transparency, 0.0F), 0xF0, 0xF0, 0xF0),
+				Color.argb(0xFF, 0x90, 0x90, 0x90)
+		);
+		Drawable drawableFocused = createTileShape(
+				Color.argb(getTransparency(transparency, 0.4F), 0xE0, 0xE0, 0xFF),
+				Color.argb(0xFF, 0x90, 0x90, 0x90)
+		);
+		Drawable drawablePressed = createTileShape(
+				Color.argb(getTransparency(transparency, 0.8F), 0xE0, 0xE0, 0xFF),
+				Color.argb(0xFF, 0x00, 0x00, 0x00)
+		);
+
+		stateListDrawable.addState(new int[]{android.R.attr.state_pressed}, drawablePressed);
+		stateListDrawable.addState(new int[]{android.R.attr.state_focused}, drawableFocused);
+		stateListDrawable.addState(new int[]{android.R.attr.state_hovered}, drawableFocused);
+		stateListDrawable.addState(StateSet.WILD_CARD, drawableEnabled);
+
+		return (stateListDrawable);
+	}
+
+	private static Drawable createTileShape(int backgroundColor, int borderColor) {
+		GradientDrawable shape = new GradientDrawable();
+		shape.setShape(GradientDrawable.RECTANGLE);
+		shape.setCornerRadii(new float[]{7, 7, 7, 7, 0, 0, 0, 0});
+		shape.setColor(backgroundColor);
+		shape.setStroke(1, borderColor);
+		shape.setBounds(7, 7, 7, 7);
+		return (shape);
+	}
+
+	private static int getTransparency(float transparency, float add) {
+		int trans = (int) ((transparency + add) * 255.0);
+		if (trans > 255)
+			return (255);
+		if (trans < 0)
+			return (0);
+		return (trans);
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.view.KeyEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class DirectLaunchTest {
+	private final List<Integer> mSelected = new ArrayList<>();
+	private DirectLaunch mDirectLaunch;
+
+	@Before
+	public void setUp() {
+		mDirectLaunch = new DirectLaunch(mSelected::add);
+		mDirectLaunch.setSlotCount(15);
+	}
+
+	@Test
+	public void digitWhichCanNotStartALongerNumberCommitsAtOnce() {
+		// 2 then any digit would be 20 or more, above the 15 slots
+		press(KeyEvent.KEYCODE_2);
+		assertSelected(1);
+	}
+
+	@Test
+	public void digitWhichCanStartALongerNumberWaits() {
+		press(KeyEvent.KEYCODE_1);
+		ShadowLooper.idleMainLooper(DirectLaunch.DIGIT_TIMEOUT_MS - 1, TimeUnit.MILLISECONDS);
+		assertSelected();
+
+		ShadowLooper.idleMainLooper(1, TimeUnit.MILLISECONDS);
+		assertSelected(0);
+	}
+
+	@Test
+	public void secondDigitCommitsAtOnce() {
+		press(KeyEvent.KEYCODE_1);
+		ShadowLooper.idleMainLooper(DirectLaunch.DIGIT_TIMEOUT_MS / 2, TimeUnit.MILLISECONDS);
+		press(KeyEvent.KEYCODE_5);
+		assertSelected(14);
+
+		// the pending timeout was dropped with the first digit
+		ShadowLooper.idleMainLooper(DirectLaunch.DIGIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		assertSelected(14);
+	}
+
+	@Test
+	public void numberOutOfTheGridIsIgnored() {
+		press(KeyEvent.KEYCODE_1);
+		press(KeyEvent.KEYCODE_6);
+		assertSelected();
+
+		press(KeyEvent.KEYCODE_0);
+		ShadowLooper.idleMainLooper(DirectLaunch.DIGIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		assertSelected();
+	}
+
+	@Test
+	public void leadingZeroIsKept() {
+		press(KeyEvent.KEYCODE_NUMPAD_0);
+		press(KeyEvent.KEYCODE_NUMPAD_3);
+		assertSelected(2);
+	}
+
+	@Test
+	public void limitFollowsTheSlotCount() {
+		mDirectLaunch.setSlotCount(10);
+		press(KeyEvent.KEYCODE_1);
+		assertSelected();
+		press(KeyEvent.KEYCODE_0);
+		assertSelected(9);
+
+		mDirectLaunch.setSlotCount(9);
+		press(KeyEvent.KEYCODE_1);
+		assertSelected(9, 0);
+	}
+
+	@Test
+	public void repeatedDigitsAreConsumed() {
+		press(KeyEvent.KEYCODE_1);
+		assertTrue(mDirectLaunch.onKeyDown(new KeyEvent(0, 0, KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_1, 1)));
+		ShadowLooper.idleMainLooper(DirectLaunch.DIGIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		assertSelected(0);
+	}
+
+	@Test
+	public void shortcutKeysSelectTheirSlot() {
+		mDirectLaunch.setShortcutKeys(new int[]{KeyEvent.KEYCODE_PROG_RED, KeyEvent.KEYCODE_PROG_GREEN});
+
+		press(KeyEvent.KEYCODE_1);
+		press(KeyEvent.KEYCODE_PROG_GREEN);
+		assertSelected(1);
+
+		// the pending digit was cancelled by the shortcut
+		ShadowLooper.idleMainLooper(DirectLaunch.DIGIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		assertSelected(1);
+
+		assertTrue(mDirectLaunch.onKeyDown(new KeyEvent(0, 0, KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_PROG_RED, 1)));
+		assertSelected(1);
+	}
+
+	@Test
+	public void otherKeysAreNotConsumed() {
+		assertFalse(mDirectLaunch.onKeyDown(new KeyEvent(KeyEvent.ACTION_DOWN, KeyEvent.KEYCODE_DPAD_CENTER)));
+		assertSelected();
+	}
+
+	@Test
+	public void cancelDropsThePendingNumber() {
+		press(KeyEvent.KEYCODE_1);
+		mDirectLaunch.cancel();
+		ShadowLooper.idleMainLooper(DirectLaunch.DIGIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		assertSelected();
+
+		press(KeyEvent.KEYCODE_3);
+		assertSelected(2);
+	}
+
+	private void press(int keyCode) {
+		assertTrue(mDirectLaunch.onKeyDown(new KeyEvent(KeyEvent.ACTION_DOWN, keyCode)));
+	}
+
+	private void assertSelected(Integer... positions) {
+		assertEquals(Arrays.asList(positions), mSelected);
+	}
+}
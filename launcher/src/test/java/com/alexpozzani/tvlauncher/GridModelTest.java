@@ -0,0 +1,138 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.alexpozzani.tvlauncher.fragments.ApplicationFragment;
+import com.alexpozzani.tvlauncher.views.ApplicationView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class GridModelTest {
+	private static final int SLOT_COUNT = 30;
+	private static final String KEPT = "com.example.kept";
+	private static final String GONE = "com.example.gone";
+	private static final String OTHER = "com.example.other";
+	private static final Set<String> INSTALLED = Collections.singleton(KEPT);
+
+	private SharedPreferences mPreferences;
+	private GridModel mModel;
+
+	@Before
+	public void setUp() throws Exception {
+		resetSingletons();
+		Context context = RuntimeEnvironment.getApplication();
+		mPreferences = context.getSharedPreferences(ApplicationFragment.PREFERENCES_NAME, Context.MODE_PRIVATE);
+		mModel = GridModel.getInstance(context);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		resetSingletons();
+	}
+
+	@Test
+	public void removeUninstalledRewritesSlotsAndFolders() {
+		write(0, "folder:" + KEPT + ";" + GONE);
+		write(1, GONE);
+		write(2, KEPT);
+		write(3, "folder:" + GONE + ";" + KEPT + ";" + GONE);
+
+		assertArrayEquals(new int[]{0, 1, 3}, mModel.removeUninstalled(SLOT_COUNT, INSTALLED));
+		assertEquals(KEPT, read(0));
+		assertNull(read(1));
+		assertEquals(KEPT, read(2));
+		assertEquals(KEPT, read(3));
+		assertEquals(KEPT, mModel.getValue(0));
+		assertNull(mModel.getValue(1));
+	}
+
+	@Test
+	public void removeUninstalledLeavesExternalWritesAlone() {
+		write(0, "folder:" + KEPT + ";" + GONE);
+		write(1, GONE);
+		mModel.getValue(0);
+		mModel.getValue(1);
+
+		// written behind the model, as a layout import or the provider would
+		write(0, OTHER);
+		mPreferences.edit().remove(ApplicationView.getPreferenceKey(1)).commit();
+
+		assertEquals(0, mModel.removeUninstalled(SLOT_COUNT, INSTALLED).length);
+		assertEquals(OTHER, read(0));
+		assertNull(read(1));
+	}
+
+	@Test
+	public void removeUninstalledKeepsConcurrentWrites() throws Exception {
+		for (int position = 0; position < SLOT_COUNT; position++) {
+			write(position, "folder:" + GONE + ";" + OTHER);
+		}
+
+		final CountDownLatch started = new CountDownLatch(1);
+		Thread writer = new Thread(() -> {
+			started.countDown();
+			for (int position = SLOT_COUNT - 1; position >= 0; position--) {
+				mModel.setSlot(position, KEPT);
+			}
+		});
+		writer.start();
+		started.await();
+		mModel.removeUninstalled(SLOT_COUNT, INSTALLED);
+		writer.join();
+
+		// whatever the interleaving, a written slot is never cleaned behind its writer
+		for (int position = 0; position < SLOT_COUNT; position++) {
+			assertEquals(KEPT, read(position));
+			assertEquals(KEPT, mModel.getValue(position));
+		}
+	}
+
+	private void write(int position, String value) {
+		mPreferences.edit().putString(ApplicationView.getPreferenceKey(position), value).commit();
+	}
+
+	private String read(int position) {
+		return (mPreferences.getString(ApplicationView.getPreferenceKey(position), null));
+	}
+
+	private static void resetSingletons() throws Exception {
+		for (Class<?> singleton : new Class<?>[]{GridModel.class, PackageIndex.class}) {
+			Field instance = singleton.getDeclaredField("sInstance");
+			instance.setAccessible(true);
+			instance.set(null, null);
+		}
+	}
+}
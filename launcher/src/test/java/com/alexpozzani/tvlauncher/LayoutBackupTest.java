@@ -0,0 +1,207 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.SparseArray;
+
+import com.alexpozzani.tvlauncher.activities.Preferences;
+import com.alexpozzani.tvlauncher.fragments.ApplicationFragment;
+import com.alexpozzani.tvlauncher.views.ApplicationView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowPackageManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class LayoutBackupTest {
+	private static final String INSTALLED = "com.example.installed";
+	private static final String OTHER = "com.example.other";
+	private static final String MISSING = "com.example.missing";
+
+	private Context mContext;
+	private SharedPreferences mSettings;
+	private SharedPreferences mSlots;
+
+	@Before
+	public void setUp() throws Exception {
+		resetSingletons();
+		mContext = RuntimeEnvironment.getApplication();
+		mSettings = PreferenceManager.getDefaultSharedPreferences(mContext);
+		mSlots = mContext.getSharedPreferences(ApplicationFragment.PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+		ShadowPackageManager packageManager = shadowOf(mContext.getPackageManager());
+		addLauncherActivity(packageManager, INSTALLED);
+		addLauncherActivity(packageManager, OTHER);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		resetSingletons();
+	}
+
+	@Test
+	public void parsePositionAcceptsTheGrid() throws Exception {
+		assertEquals(0, LayoutBackup.parsePosition("0", 6));
+		assertEquals(5, LayoutBackup.parsePosition("5", 6));
+	}
+
+	@Test
+	public void parsePositionRejectsOutsideOfTheGrid() {
+		assertInvalidPosition("6", 6);
+		assertInvalidPosition("-1", 6);
+		assertInvalidPosition("first", 6);
+		assertInvalidPosition("", 6);
+	}
+
+	@Test
+	public void resolveSlotsDropsMissingPackages() {
+		Set<String> installed = new HashSet<>(Arrays.asList(INSTALLED, OTHER));
+		SparseArray<String> slots = new SparseArray<>();
+		slots.put(0, INSTALLED);
+		slots.put(1, MISSING);
+		slots.put(2, "folder:" + INSTALLED + ";" + MISSING + ";" + OTHER);
+		slots.put(3, "folder:" + MISSING + ";" + OTHER);
+		slots.put(4, null);
+
+		assertEquals(1, LayoutBackup.resolveSlots(installed, slots));
+		assertEquals(INSTALLED, slots.get(0));
+		assertNull(slots.get(1));
+		assertEquals("folder:" + INSTALLED + ";" + OTHER, slots.get(2));
+		// a folder left with one package becomes a plain application slot
+		assertEquals(OTHER, slots.get(3));
+		assertNull(slots.get(4));
+		assertEquals(5, slots.size());
+	}
+
+	@Test
+	public void exportThenImportRestoresTheLayout() throws Exception {
+		mSettings.edit()
+				.putString(Preferences.PREFERENCE_GRID_X, "3")
+				.putString(Preferences.PREFERENCE_GRID_Y, "2")
+				.putString(Preferences.PREFERENCE_MARGIN_X, "10")
+				.putString(Preferences.PREFERENCE_MARGIN_Y, "20")
+				.putBoolean(Preferences.PREFERENCE_DEFAULT_TRANSPARENCY, false)
+				.putFloat(Preferences.PREFERENCE_TRANSPARENCY, 0.25f)
+				.commit();
+		mSlots.edit()
+				.putString(ApplicationView.getPreferenceKey(0), INSTALLED)
+				.putString(ApplicationView.getPreferenceKey(2), "folder:" + OTHER + ";" + MISSING + ";" + INSTALLED)
+				.putString(ApplicationView.getPreferenceKey(5), MISSING)
+				.commit();
+
+		LayoutBackup.exportLayout(mContext);
+		mSettings.edit().clear().commit();
+		mSlots.edit().clear().putString(ApplicationView.getPreferenceKey(1), OTHER).commit();
+
+		assertEquals(1, LayoutBackup.importLayout(mContext));
+
+		Setup setup = new Setup(mContext);
+		assertEquals(3, setup.getGridX());
+		assertEquals(2, setup.getGridY());
+		assertEquals(10, setup.getMarginX());
+		assertEquals(20, setup.getMarginY());
+		assertFalse(setup.isDefaultTransparency());
+		assertEquals(0.25f, setup.getTransparency(), 0.001f);
+		assertFalse(setup.isFirstLaunch());
+
+		assertEquals(INSTALLED, mSlots.getString(ApplicationView.getPreferenceKey(0), null));
+		assertNull(mSlots.getString(ApplicationView.getPreferenceKey(1), null));
+		assertEquals("folder:" + OTHER + ";" + INSTALLED, mSlots.getString(ApplicationView.getPreferenceKey(2), null));
+		assertNull(mSlots.getString(ApplicationView.getPreferenceKey(5), null));
+	}
+
+	@Test
+	public void importRejectsAnInvalidFileWithoutWriting() throws Exception {
+		mSlots.edit().putString(ApplicationView.getPreferenceKey(0), INSTALLED).commit();
+
+		assertInvalidLayout("{\"version\": 2, \"grid_x\": 3, \"grid_y\": 2, \"margin_x\": 10, \"margin_y\": 10}");
+		assertInvalidLayout("{\"version\": 1, \"grid_x\": 7, \"grid_y\": 2, \"margin_x\": 10, \"margin_y\": 10}");
+		assertInvalidLayout("{\"version\": 1, \"grid_x\": 3, \"grid_y\": 2, \"margin_x\": 10, \"margin_y\": 10, \"transparency\": 2}");
+		assertInvalidLayout("{\"version\": 1, \"grid_x\": 3, \"grid_y\": 2, \"margin_x\": 10, \"margin_y\": 10, \"slots\": {\"6\": \"" + INSTALLED + "\"}}");
+		assertInvalidLayout("{\"version\": 1, \"grid_x\": 3");
+
+		assertEquals(INSTALLED, mSlots.getString(ApplicationView.getPreferenceKey(0), null));
+		assertNull(mSettings.getString(Preferences.PREFERENCE_GRID_X, null));
+	}
+
+	private void assertInvalidPosition(String key, int slotCount) {
+		try {
+			LayoutBackup.parsePosition(key, slotCount);
+			fail("Position " + key + " accepted");
+		} catch (LayoutBackup.InvalidLayoutException e) {
+			// expected
+		}
+	}
+
+	private void assertInvalidLayout(String content) throws IOException {
+		File file = LayoutBackup.getFile(mContext);
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+
+		try {
+			LayoutBackup.importLayout(mContext);
+			fail("Layout accepted : " + content);
+		} catch (LayoutBackup.InvalidLayoutException e) {
+			// expected
+		}
+	}
+
+	private static void addLauncherActivity(ShadowPackageManager packageManager, String packageName) {
+		ComponentName component = new ComponentName(packageName, packageName + ".MainActivity");
+		IntentFilter filter = new IntentFilter(Intent.ACTION_MAIN);
+		filter.addCategory(Intent.CATEGORY_LAUNCHER);
+
+		packageManager.addActivityIfNotPresent(component);
+		packageManager.addIntentFilterForActivity(component, filter);
+	}
+
+	private static void resetSingletons() throws Exception {
+		for (Class<?> singleton : new Class<?>[]{GridModel.class, PackageIndex.class}) {
+			Field instance = singleton.getDeclaredField("sInstance");
+			instance.setAccessible(true);
+			instance.set(null, null);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PackageIndexTest {
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private File mFile;
+	private Map<String, PackageIndex.Entry> mEntries;
+
+	@Before
+	public void setUp() {
+		mFile = new File(mFolder.getRoot(), "package_index.bin");
+		mEntries = new HashMap<>();
+		put(new PackageIndex.Entry("com.example.tv", "com.example.tv.MainActivity", 0x7f0e0001,
+				"com.example.tv:42", 42L, PackageIndex.FLAG_LEANBACK));
+		put(new PackageIndex.Entry("com.example.syst\u00e8me", "com.example.syst\u00e8me.Main", 0,
+				"com.example.syst\u00e8me:" + Long.MAX_VALUE, Long.MAX_VALUE, PackageIndex.FLAG_SYSTEM));
+	}
+
+	@Test
+	public void writeThenReadKeepsTheEntries() {
+		PackageIndex.write(mFile, mEntries);
+
+		Map<String, PackageIndex.Entry> read = PackageIndex.read(mFile);
+		assertEquals(mEntries.keySet(), read.keySet());
+		for (PackageIndex.Entry entry : mEntries.values()) {
+			assertTrue(entry.mPackageName, entry.sameAs(read.get(entry.mPackageName)));
+		}
+		assertFalse(new File(mFile.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void readMissingFileIsEmpty() {
+		assertTrue(PackageIndex.read(mFile).isEmpty());
+	}
+
+	@Test
+	public void readEmptyFileIsEmpty() throws IOException {
+		assertTrue(mFile.createNewFile());
+		assertTrue(PackageIndex.read(mFile).isEmpty());
+	}
+
+	@Test
+	public void readTruncatedFileIsEmpty() throws IOException {
+		PackageIndex.write(mFile, mEntries);
+		byte[] content = Files.readAllBytes(mFile.toPath());
+
+		// every cut, including inside the header, a string or the last entry, drops the whole index
+		for (int cut = content.length - 1; cut > 0; cut--) {
+			File truncated = writeBytes("truncated_" + cut, Arrays.copyOf(content, cut));
+			assertTrue("cut at " + cut, PackageIndex.read(truncated).isEmpty());
+		}
+	}
+
+	@Test
+	public void readBadMagicOrVersionIsEmpty() throws IOException {
+		PackageIndex.write(mFile, mEntries);
+		byte[] content = Files.readAllBytes(mFile.toPath());
+
+		byte[] badMagic = Arrays.copyOf(content, content.length);
+		badMagic[0] ^= 0xFF;
+		assertTrue(PackageIndex.read(writeBytes("bad_magic", badMagic)).isEmpty());
+
+		byte[] badVersion = Arrays.copyOf(content, content.length);
+		badVersion[7] = 2;
+		assertTrue(PackageIndex.read(writeBytes("bad_version", badVersion)).isEmpty());
+	}
+
+	@Test
+	public void readCorruptLengthIsEmpty() throws IOException {
+		PackageIndex.write(mFile, mEntries);
+		byte[] content = Files.readAllBytes(mFile.toPath());
+
+		// length of the first package name, past the magic, version and count
+		content[12] = (byte) 0xFF;
+		content[13] = (byte) 0xFF;
+		assertTrue(PackageIndex.read(writeBytes("bad_length", content)).isEmpty());
+	}
+
+	private void put(PackageIndex.Entry entry) {
+		mEntries.put(entry.mPackageName, entry);
+	}
+
+	private File writeBytes(String name, byte[] content) throws IOException {
+		File file = new File(mFolder.getRoot(), name);
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(content);
+		}
+		return (file);
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher;
+
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class StartupSchedulerTest {
+	private final List<String> mRun = new ArrayList<>();
+	private StartupScheduler mScheduler;
+	private View mView;
+
+	@Before
+	public void setUp() {
+		mScheduler = new StartupScheduler();
+		mView = new View(RuntimeEnvironment.getApplication());
+	}
+
+	@Test
+	public void dependenciesMustBeDeclaredInTheSameOrAnEarlierPhase() {
+		mScheduler.add("pre", StartupScheduler.PRE_FIRST_FRAME, record("pre"))
+				.add("post", StartupScheduler.POST_FIRST_FRAME, record("post"), "pre")
+				.add("idle", StartupScheduler.IDLE, record("idle"), "pre", "post")
+				.add("other idle", StartupScheduler.IDLE, record("other idle"), "idle");
+
+		assertRejected("late", StartupScheduler.IDLE, "unknown");
+		assertRejected("early", StartupScheduler.PRE_FIRST_FRAME, "post");
+		assertRejected("early", StartupScheduler.POST_FIRST_FRAME, "idle");
+	}
+
+	@Test
+	public void phasesRunInOrder() {
+		mScheduler.add("a", StartupScheduler.PRE_FIRST_FRAME, record("a"))
+				.add("b", StartupScheduler.POST_FIRST_FRAME, record("b"), "a")
+				.add("c", StartupScheduler.IDLE, record("c"), "b")
+				.add("d", StartupScheduler.PRE_FIRST_FRAME, record("d"), "a")
+				.add("e", StartupScheduler.POST_FIRST_FRAME, record("e"));
+
+		mScheduler.start(mView);
+		assertRun("a", "d");
+
+		// nothing more runs until the view is drawn
+		ShadowLooper.idleMainLooper();
+		assertRun("a", "d");
+
+		draw();
+		assertRun("a", "d");
+		ShadowLooper.idleMainLooper();
+		assertRun("a", "d", "b", "e", "c");
+	}
+
+	@Test
+	public void laterFramesDoNotRunTheTasksAgain() {
+		mScheduler.add("post", StartupScheduler.POST_FIRST_FRAME, record("post"))
+				.add("idle", StartupScheduler.IDLE, record("idle"));
+
+		mScheduler.start(mView);
+		draw();
+		draw();
+		ShadowLooper.idleMainLooper();
+		draw();
+		ShadowLooper.idleMainLooper();
+		assertRun("post", "idle");
+	}
+
+	@Test
+	public void cancelBeforeTheFirstFrameDropsTheLaterPhases() {
+		mScheduler.add("pre", StartupScheduler.PRE_FIRST_FRAME, record("pre"))
+				.add("post", StartupScheduler.POST_FIRST_FRAME, record("post"))
+				.add("idle", StartupScheduler.IDLE, record("idle"));
+
+		mScheduler.start(mView);
+		mScheduler.cancel();
+		draw();
+		ShadowLooper.idleMainLooper();
+		assertRun("pre");
+
+		StringWriter dump = new StringWriter();
+		mScheduler.dump("", new PrintWriter(dump));
+		assertTrue(dump.toString(), dump.toString().contains("post (post first frame): not run"));
+	}
+
+	@Test
+	public void cancelAfterTheFirstFrameDropsTheIdlePhase() {
+		mScheduler.add("post", StartupScheduler.POST_FIRST_FRAME, () -> {
+			mRun.add("post");
+			mScheduler.cancel();
+		}).add("idle", StartupScheduler.IDLE, record("idle"));
+
+		mScheduler.start(mView);
+		draw();
+		ShadowLooper.idleMainLooper();
+		assertRun("post");
+	}
+
+	private Runnable record(final String name) {
+		return (() -> mRun.add(name));
+	}
+
+	private void draw() {
+		ReflectionHelpers.callInstanceMethod(mView.getViewTreeObserver(), "dispatchOnDraw");
+	}
+
+	private void assertRun(String... names) {
+		assertEquals(Arrays.asList(names), mRun);
+	}
+
+	private void assertRejected(String name, int phase, String dependency) {
+		try {
+			mScheduler.add(name, phase, record(name), dependency);
+			fail(name + " accepted a dependency on " + dependency);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Simple TV Launcher
+ * Copyright 2024 Alexandre Del Bigio
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.alexpozzani.tvlauncher.views;
+
+import android.content.Context;
+import android.view.View;
+
+import com.alexpozzani.tvlauncher.R;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class ApplicationGridTest {
+	private static final int ROWS = 2;
+	private static final int COLUMNS = 3;
+
+	private ApplicationGrid mGrid;
+	private ApplicationView[][] mTiles;
+	private View mLeading;
+	private View mTrailing;
+
+	@Before
+	public void setUp() {
+		Context context = RuntimeEnvironment.getApplication();
+
+		mGrid = new ApplicationGrid(context);
+		mTiles = new ApplicationView[ROWS][COLUMNS];
+		for (int position = 0; position < ROWS * COLUMNS; position++) {
+			ApplicationView tile = new ApplicationView(context);
+			tile.setPosition(position);
+			mTiles[position / COLUMNS][position % COLUMNS] = tile;
+		}
+		mLeading = new View(context);
+		mLeading.setId(View.generateViewId());
+		mTrailing = new View(context);
+		mTrailing.setId(View.generateViewId());
+	}
+
+	@Test
+	public void horizontalMovesWrapToTheNextRow() {
+		mGrid.setTiles(mTiles, mLeading, mTrailing);
+
+		assertSame(tile(1), search(0, View.FOCUS_RIGHT));
+		assertSame(tile(3), search(2, View.FOCUS_RIGHT));
+		assertSame(tile(2), search(3, View.FOCUS_LEFT));
+		assertSame(tile(3), search(2, View.FOCUS_FORWARD));
+		assertSame(tile(2), search(3, View.FOCUS_BACKWARD));
+	}
+
+	@Test
+	public void verticalMovesKeepTheColumn() {
+		mGrid.setTiles(mTiles, mLeading, mTrailing);
+
+		assertSame(tile(4), search(1, View.FOCUS_DOWN));
+		assertSame(tile(1), search(4, View.FOCUS_UP));
+	}
+
+	@Test
+	public void movesOutOfTheGridReachTheButtons() {
+		mGrid.setTiles(mTiles, mLeading, mTrailing);
+
+		assertSame(mLeading, search(0, View.FOCUS_LEFT));
+		assertSame(mLeading, search(2, View.FOCUS_UP));
+		assertSame(mTrailing, search(5, View.FOCUS_RIGHT));
+		assertSame(mTrailing, search(3, View.FOCUS_DOWN));
+	}
+
+	@Test
+	public void hiddenTilesArePassedOver() {
+		tile(1).setVisibility(View.GONE);
+		tile(4).setFocusable(false);
+		mGrid.setTiles(mTiles, mLeading, mTrailing);
+
+		assertSame(tile(2), search(0, View.FOCUS_RIGHT));
+		assertSame(tile(0), search(2, View.FOCUS_LEFT));
+		assertSame(tile(3), search(5, View.FOCUS_LEFT));
+		assertSame(tile(5), search(3, View.FOCUS_RIGHT));
+		// the column has no other focusable tile, down leaves the grid
+		assertSame(mTrailing, search(1, View.FOCUS_DOWN));
+	}
+
+	@Test
+	public void missingTilesArePassedOver() {
+		mTiles[1][1] = null;
+		mTiles[1][2] = null;
+		mGrid.setTiles(mTiles, mLeading, mTrailing);
+
+		assertSame(mTrailing, search(3, View.FOCUS_RIGHT));
+		assertSame(mTrailing, search(2, View.FOCUS_DOWN));
+		assertSame(tile(3), search(0, View.FOCUS_DOWN));
+	}
+
+	@Test
+	public void buttonsEnterTheGridAtTheFirstAndLastTiles() {
+		tile(0).setVisibility(View.INVISIBLE);
+		tile(5).setFocusable(false);
+		mGrid.setTiles(mTiles, mLeading, mTrailing);
+
+		assertEquals(R.id.grid_first_tile, tile(1).getId());
+		assertEquals(R.id.grid_last_tile, tile(4).getId());
+		assertEquals(R.id.grid_first_tile, mLeading.getNextFocusRightId());
+		assertEquals(mTrailing.getId(), mLeading.getNextFocusLeftId());
+		assertEquals(R.id.grid_last_tile, mTrailing.getNextFocusLeftId());
+		assertEquals(mLeading.getId(), mTrailing.getNextFocusRightId());
+
+		// a later call moves the ids instead of duplicating them
+		tile(0).setVisibility(View.VISIBLE);
+		mGrid.setTiles(mTiles, mLeading, mTrailing);
+		assertEquals(R.id.grid_first_tile, tile(0).getId());
+		assertEquals(View.NO_ID, tile(1).getId());
+	}
+
+	@Test
+	public void viewsOutsideOfTheGridUseTheDefaultSearch() {
+		mGrid.setTiles(mTiles, mLeading, mTrailing);
+		ApplicationView stranger = new ApplicationView(RuntimeEnvironment.getApplication());
+		stranger.setPosition(0);
+
+		assertNull(mGrid.focusSearch(stranger, View.FOCUS_RIGHT));
+	}
+
+	private ApplicationView tile(int position) {
+		return (mTiles[position / COLUMNS][position % COLUMNS]);
+	}
+
+	private View search(int position, int direction) {
+		return (mGrid.focusSearch(tile(position), direction));
+	}
+}